@@ -3,9 +3,18 @@ package org.tron.p2p;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 import org.tron.p2p.dns.update.PublishConfig;
 import org.tron.p2p.utils.NetUtil;
 
@@ -16,9 +25,15 @@ public class P2pConfig {
   private List<InetSocketAddress> activeNodes = new CopyOnWriteArrayList<>();
   private List<InetAddress> trustNodes = new CopyOnWriteArrayList<>();
   private byte[] nodeID = NetUtil.getNodeId();
-  private String ip = NetUtil.getExternalIpV4();
-  private String lanIp = NetUtil.getLanIP();
-  private String ipv6 = NetUtil.getExternalIpV6();
+  //addresses not set explicitly are looked up on first use, see lookupAddresses
+  private String ip;
+  private String lanIp;
+  private String ipv6;
+  //look up the addresses that are not set, disable for offline or air-gapped nodes
+  private boolean ipLookupEnable = true;
+  //learn the external addresses from how peers see us, an address that was not set explicitly
+  //follows the view of a quorum of peers, e.g. after a nat change
+  private boolean ipVoteEnable = true;
   private int port = 18888;
   private int networkId = 1;
   private int minConnections = 8;
@@ -29,9 +44,186 @@ public class P2pConfig {
   private boolean disconnectionPolicyEnable = false;
   private boolean nodeDetectEnable = false;
 
+  //udp discovery threads, each binds its own socket with SO_REUSEPORT, 0 means one per cpu core
+  //only used with epoll, other platforms use a single socket
+  private int udpThreads = 1;
+  //max udp packets sent per second by each discovery socket, 0 means no limit
+  private int udpSendRate = 2000;
+
+  //node database directory, nodes are not persisted if empty
+  private String dataDir;
+
+  //hex secp256k1 private key, if set the node id is its public key and a signed record with
+  //the capabilities is announced in discovery
+  private String nodeKey;
+  private Map<String, byte[]> capabilities = new HashMap<>();
+  //capabilities a discovered node must announce to be dialed, nodes without a record are
+  //still dialed after the matching ones
+  private Map<String, byte[]> requiredCapabilities = new HashMap<>();
+
   //dns read config
   private List<String> treeUrls = new ArrayList<>();
+  //max dns entries looked up at the same time while syncing the trees
+  private int dnsSyncParallelism = 16;
+  //dns servers that answer the tree lookups, e.g. a local stub resolver at 127.0.0.1:53,
+  //public resolvers are used if empty
+  private List<InetSocketAddress> dnsResolvers = new ArrayList<>();
 
   //dns publish config
   private PublishConfig publishConfig = new PublishConfig();
+
+  // lookup state of the addresses, internal and not part of the config
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private transient volatile boolean ipResolved;
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private transient volatile boolean lanIpResolved;
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private transient volatile boolean ipv6Resolved;
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private transient volatile boolean ipConfigured;
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private transient volatile boolean ipv6Configured;
+  // set once lookupAddresses is called, getters then never wait for a lookup
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private transient volatile boolean asyncLookup;
+
+  /**
+   * Starts looking up the addresses that are not set. Until the returned future completes their
+   * getters return null instead of blocking.
+   */
+  public CompletableFuture<Void> lookupAddresses() {
+    asyncLookup = true;
+    if (!ipLookupEnable) {
+      return CompletableFuture.completedFuture(null);
+    }
+    List<CompletableFuture<String>> lookups = new ArrayList<>();
+    if (!ipResolved) {
+      lookups.add(NetUtil.lookupExternalIpV4());
+    }
+    if (!lanIpResolved) {
+      lookups.add(NetUtil.lookupLanIP());
+    }
+    if (!ipv6Resolved) {
+      lookups.add(NetUtil.lookupExternalIpV6());
+    }
+    return CompletableFuture.allOf(lookups.toArray(new CompletableFuture[0])).thenRun(() -> {
+      getIp();
+      getLanIp();
+      getIpv6();
+    });
+  }
+
+  /**
+   * The external ipv4 address, looked up on first use if not set. Once lookupAddresses was
+   * called this never blocks and returns null while the lookup is still pending.
+   */
+  public String getIp() {
+    if (!ipResolved) {
+      synchronized (this) {
+        Optional<String> value = ipResolved ? null : lookup(NetUtil::lookupExternalIpV4);
+        if (value != null) {
+          ip = value.orElse(null);
+          ipResolved = true;
+        }
+      }
+    }
+    return ip;
+  }
+
+  public synchronized void setIp(String ip) {
+    this.ip = ip;
+    this.ipResolved = true;
+    this.ipConfigured = true;
+  }
+
+  /**
+   * Replaces a looked up or learned ipv4 address, an address set explicitly is kept.
+   *
+   * @return true if the address changed
+   */
+  public synchronized boolean updateExternalIp(String ip) {
+    if (ipConfigured || (ipResolved && Objects.equals(this.ip, ip))) {
+      return false;
+    }
+    this.ip = ip;
+    this.ipResolved = true;
+    return true;
+  }
+
+  /**
+   * The lan address, looked up on first use if not set. Once lookupAddresses was called this
+   * never blocks and returns null while the lookup is still pending.
+   */
+  public String getLanIp() {
+    if (!lanIpResolved) {
+      synchronized (this) {
+        Optional<String> value = lanIpResolved ? null : lookup(NetUtil::lookupLanIP);
+        if (value != null) {
+          lanIp = value.orElse(null);
+          lanIpResolved = true;
+        }
+      }
+    }
+    return lanIp;
+  }
+
+  public synchronized void setLanIp(String lanIp) {
+    this.lanIp = lanIp;
+    this.lanIpResolved = true;
+  }
+
+  /**
+   * The external ipv6 address, looked up on first use if not set. Once lookupAddresses was
+   * called this never blocks and returns null while the lookup is still pending.
+   */
+  public String getIpv6() {
+    if (!ipv6Resolved) {
+      synchronized (this) {
+        Optional<String> value = ipv6Resolved ? null : lookup(NetUtil::lookupExternalIpV6);
+        if (value != null) {
+          ipv6 = value.orElse(null);
+          ipv6Resolved = true;
+        }
+      }
+    }
+    return ipv6;
+  }
+
+  public synchronized void setIpv6(String ipv6) {
+    this.ipv6 = ipv6;
+    this.ipv6Resolved = true;
+    this.ipv6Configured = true;
+  }
+
+  /**
+   * Replaces a looked up or learned ipv6 address, an address set explicitly is kept.
+   *
+   * @return true if the address changed
+   */
+  public synchronized boolean updateExternalIpv6(String ipv6) {
+    if (ipv6Configured || (ipv6Resolved && Objects.equals(this.ipv6, ipv6))) {
+      return false;
+    }
+    this.ipv6 = ipv6;
+    this.ipv6Resolved = true;
+    return true;
+  }
+
+  // the looked up address, null while an asynchronous lookup is still running
+  private Optional<String> lookup(Supplier<CompletableFuture<String>> lookup) {
+    if (!ipLookupEnable) {
+      return Optional.empty();
+    }
+    CompletableFuture<String> future = lookup.get();
+    if (asyncLookup && !future.isDone()) {
+      return null;
+    }
+    return Optional.ofNullable(future.join());
+  }
 }
@@ -6,13 +6,17 @@ import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import lombok.extern.slf4j.Slf4j;
 import org.tron.p2p.base.Parameter;
 import org.tron.p2p.connection.Channel;
 import org.tron.p2p.connection.ChannelManager;
 import org.tron.p2p.discover.Node;
 import org.tron.p2p.discover.NodeManager;
+import org.tron.p2p.discover.NodeRecord;
+import org.tron.p2p.discover.NodeStore;
 import org.tron.p2p.dns.DnsManager;
 import org.tron.p2p.exception.P2pException;
 import org.tron.p2p.stats.P2pStats;
@@ -25,20 +29,37 @@ public class P2pService {
   private volatile boolean isShutdown = false;
 
   public void start(P2pConfig p2pConfig) {
+    long startTime = System.currentTimeMillis();
     Parameter.p2pConfig = p2pConfig;
-    NodeManager.init();
-    ChannelManager.init();
-    DnsManager.init();
-    log.info("P2p service started");
+    if (p2pConfig.getNodeKey() != null) {
+      p2pConfig.setNodeID(NodeRecord.nodeIdFromKey(p2pConfig.getNodeKey()));
+    }
+    // the stored addresses of the last run are used without a lookup
+    timed("NodeStore", NodeStore::init);
+    // external address lookups run in the background, the services below start meanwhile
+    CompletableFuture<Void> addressLookup = p2pConfig.lookupAddresses();
+    addressLookup.thenRun(() -> log.info("Address lookup done in {} ms, ip {}, ipv6 {}",
+        System.currentTimeMillis() - startTime, p2pConfig.getIp(), p2pConfig.getIpv6()));
+    timed("NodeManager", () -> NodeManager.init(addressLookup));
+    timed("ChannelManager", () -> ChannelManager.init(addressLookup));
+    timed("DnsManager", DnsManager::init);
+    log.info("P2p service started in {} ms", System.currentTimeMillis() - startTime);
 
     Runtime.getRuntime().addShutdownHook(new Thread(this::close));
   }
 
+  private static void timed(String phase, Runnable init) {
+    long t = System.currentTimeMillis();
+    init.run();
+    log.info("{} init cost {} ms", phase, System.currentTimeMillis() - t);
+  }
+
   public void close() {
     if (isShutdown) {
       return;
     }
     isShutdown = true;
+    NodeStore.close();
     DnsManager.close();
     NodeManager.close();
     ChannelManager.close();
@@ -80,6 +101,13 @@ public class P2pService {
     return new ArrayList<>(nodes);
   }
 
+  /**
+   * Signs and announces a new record with the capabilities, needs a configured node key.
+   */
+  public void updateCapabilities(Map<String, byte[]> capabilities) {
+    NodeManager.updateCapabilities(capabilities);
+  }
+
   public void updateNodeId(Channel channel, String nodeId) {
     ChannelManager.updateNodeId(channel, nodeId);
   }
@@ -9,6 +9,7 @@ import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -26,9 +27,11 @@ import org.tron.p2p.connection.message.base.P2pDisconnectMessage;
 import org.tron.p2p.connection.socket.PeerClient;
 import org.tron.p2p.connection.socket.PeerServer;
 import org.tron.p2p.discover.Node;
+import org.tron.p2p.discover.NodeStore;
 import org.tron.p2p.exception.P2pException;
 import org.tron.p2p.exception.P2pException.TypeEnum;
 import org.tron.p2p.protos.Connect.DisconnectReason;
+import org.tron.p2p.protos.Discover.StoredNodes;
 import org.tron.p2p.utils.ByteArray;
 import org.tron.p2p.utils.NetUtil;
 
@@ -62,7 +65,21 @@ public class ChannelManager {
   public static volatile boolean isShutdown = false;
 
   public static void init() {
+    init(CompletableFuture.completedFuture(null));
+  }
+
+  /**
+   * Starts the connection services. Pool connects and the restored probe history pick the
+   * address of a node by the home addresses, so they wait for the address lookup.
+   */
+  public static void init(CompletableFuture<Void> addressLookup) {
     isInit = true;
+    for (StoredNodes.Ban ban : NodeStore.getStoredBans()) {
+      InetAddress inetAddress = NodeStore.getAddress(ban);
+      if (inetAddress != null && !ban.getDetectFailed()) {
+        bannedNodes.put(inetAddress, ban.getExpireTime());
+      }
+    }
     peerServer = new PeerServer();
     peerClient = new PeerClient();
     keepAliveService = new KeepAliveService();
@@ -72,6 +89,13 @@ public class ChannelManager {
     peerServer.init();
     peerClient.init();
     keepAliveService.init();
+    addressLookup.whenComplete((v, e) -> onAddressesReady());
+  }
+
+  private static synchronized void onAddressesReady() {
+    if (isShutdown) {
+      return;
+    }
     connPoolService.init(peerClient);
     nodeDetectService.init(peerClient);
   }
@@ -186,7 +210,7 @@ public class ChannelManager {
     }
   }
 
-  public static void close() {
+  public static synchronized void close() {
     if (!isInit || isShutdown) {
       return;
     }
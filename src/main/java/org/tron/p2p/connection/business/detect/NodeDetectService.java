@@ -8,6 +8,7 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -23,6 +24,10 @@ import org.tron.p2p.connection.message.detect.StatusMessage;
 import org.tron.p2p.connection.socket.PeerClient;
 import org.tron.p2p.discover.Node;
 import org.tron.p2p.discover.NodeManager;
+import org.tron.p2p.discover.NodeStore;
+import org.tron.p2p.protos.Discover.StoredNode;
+import org.tron.p2p.protos.Discover.StoredNodes;
+import org.tron.p2p.utils.NetUtil;
 
 @Slf4j(topic = "net")
 public class NodeDetectService implements MessageProcess {
@@ -31,9 +36,21 @@ public class NodeDetectService implements MessageProcess {
 
   private Map<InetSocketAddress, NodeStat> nodeStatMap = new ConcurrentHashMap<>();
 
+  // detected nodes ordered by score, updated on every probe result, guarded by this
+  private final TreeSet<NodeStat> rankedStats = new TreeSet<>(NodeStat.SCORE_COMPARATOR);
+
+  // stats of nodes whose last probe failed, so that a node detected again keeps its history
+  private final Cache<InetSocketAddress, NodeStat> failedStats = CacheBuilder.newBuilder()
+      .maximumSize(5000).expireAfterWrite(24, TimeUnit.HOURS).build();
+
+  private static final long BAD_NODE_EXPIRE_TIME = 60 * 60 * 1000L;
+
+  // nodes that failed detection and the time their ban expires, which may be earlier than the
+  // write expiry for bans restored from the node store
   @Getter
   private static final Cache<InetAddress, Long> badNodesCache = CacheBuilder
-      .newBuilder().maximumSize(5000).expireAfterWrite(1, TimeUnit.HOURS).build();
+      .newBuilder().maximumSize(5000)
+      .expireAfterWrite(BAD_NODE_EXPIRE_TIME, TimeUnit.MILLISECONDS).build();
 
   private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
       new BasicThreadFactory.Builder().namingPattern("nodeDetectService").build());
@@ -60,6 +77,7 @@ public class NodeDetectService implements MessageProcess {
       return;
     }
     this.peerClient = peerClient;
+    restoreNodes();
     executor.scheduleWithFixedDelay(() -> {
       try {
         work();
@@ -73,6 +91,44 @@ public class NodeDetectService implements MessageProcess {
     executor.shutdown();
   }
 
+  /**
+   * Seeds the probe history from the node store, restored nodes are ranked right away and
+   * re-detected first because their detect time is the oldest.
+   */
+  private void restoreNodes() {
+    for (StoredNodes.Ban ban : NodeStore.getStoredBans()) {
+      InetAddress inetAddress = NodeStore.getAddress(ban);
+      if (inetAddress != null && ban.getDetectFailed()
+          && ban.getExpireTime() > System.currentTimeMillis()) {
+        badNodesCache.put(inetAddress, ban.getExpireTime());
+      }
+    }
+    for (StoredNode storedNode : NodeStore.getStoredNodes()) {
+      if (nodeStatMap.size() >= MAX_NODES) {
+        break;
+      }
+      if (storedNode.getLastDetectTime() <= 0) {
+        continue;
+      }
+      Node node = NetUtil.getNode(storedNode.getEndpoint());
+      node.setP2pVersion(storedNode.getNetworkId());
+      InetSocketAddress socketAddress = node.getPreferInetSocketAddress();
+      if (socketAddress == null || nodeStatMap.containsKey(socketAddress)
+          || isBadNode(socketAddress.getAddress())) {
+        continue;
+      }
+      NodeStat nodeStat = new NodeStat(node);
+      nodeStat.setTotalCount(1);
+      nodeStat.setLastDetectTime(storedNode.getLastDetectTime());
+      nodeStat.setLastSuccessDetectTime(storedNode.getLastDetectTime());
+      nodeStat.recordSuccess(storedNode.getAvgRtt(), storedNode.getRemainConnections());
+      nodeStatMap.put(socketAddress, nodeStat);
+      synchronized (this) {
+        rankedStats.add(nodeStat);
+      }
+    }
+  }
+
   public void work() {
     trimNodeMap();
     if (nodeStatMap.size() < MIN_NODES) {
@@ -105,8 +161,8 @@ public class NodeDetectService implements MessageProcess {
     long now = System.currentTimeMillis();
     nodeStatMap.forEach((k, v) -> {
       if (!v.finishDetect() && v.getLastDetectTime() < now - NODE_DETECT_TIMEOUT) {
-        nodeStatMap.remove(k);
-        badNodesCache.put(k.getAddress(), System.currentTimeMillis());
+        removeNodeStat(k);
+        banBadNode(k.getAddress());
       }
     });
   }
@@ -119,8 +175,13 @@ public class NodeDetectService implements MessageProcess {
       InetSocketAddress socketAddress = node.getPreferInetSocketAddress();
       if (socketAddress != null
           && !nodeStatMap.containsKey(socketAddress)
-          && badNodesCache.getIfPresent(socketAddress.getAddress()) == null) {
-        NodeStat nodeStat = new NodeStat(node);
+          && !isBadNode(socketAddress.getAddress())) {
+        NodeStat nodeStat = failedStats.asMap().remove(socketAddress);
+        if (nodeStat == null) {
+          nodeStat = new NodeStat(node);
+        } else {
+          nodeStat.setNode(node);
+        }
         nodeStatMap.put(socketAddress, nodeStat);
         detect(nodeStat);
         count++;
@@ -139,7 +200,7 @@ public class NodeDetectService implements MessageProcess {
     } catch (Exception e) {
       log.warn("Detect node {} failed, {}",
           stat.getNode().getPreferInetSocketAddress(), e.getMessage());
-      nodeStatMap.remove(stat.getSocketAddress());
+      removeNodeStat(stat.getSocketAddress());
     }
   }
 
@@ -160,15 +221,15 @@ public class NodeDetectService implements MessageProcess {
     }
 
     long cost = System.currentTimeMillis() - nodeStat.getLastDetectTime();
+    nodeStat.setLastSuccessDetectTime(nodeStat.getLastDetectTime());
     if (cost > NODE_DETECT_TIMEOUT
         || statusMessage.getRemainConnections() == 0) {
-      badNodesCache.put(socketAddress.getAddress(), cost);
-      nodeStatMap.remove(socketAddress);
+      banBadNode(socketAddress.getAddress());
+      removeNodeStat(socketAddress);
+    } else {
+      updateRank(nodeStat, statusMessage, cost);
     }
 
-    nodeStat.setLastSuccessDetectTime(nodeStat.getLastDetectTime());
-    setStatusMessage(nodeStat, statusMessage);
-
     channel.getCtx().close();
   }
 
@@ -189,11 +250,20 @@ public class NodeDetectService implements MessageProcess {
     }
 
     if (nodeStat.getLastDetectTime() != nodeStat.getLastSuccessDetectTime()) {
-      badNodesCache.put(socketAddress.getAddress(), System.currentTimeMillis());
-      nodeStatMap.remove(socketAddress);
+      banBadNode(socketAddress.getAddress());
+      removeNodeStat(socketAddress);
     }
   }
 
+  private static void banBadNode(InetAddress address) {
+    badNodesCache.put(address, System.currentTimeMillis() + BAD_NODE_EXPIRE_TIME);
+  }
+
+  static boolean isBadNode(InetAddress address) {
+    Long expireTime = badNodesCache.getIfPresent(address);
+    return expireTime != null && expireTime > System.currentTimeMillis();
+  }
+
   private synchronized List<NodeStat> getSortedNodeStats() {
     List<NodeStat> nodeStats = new ArrayList<>(nodeStatMap.values());
     nodeStats.sort(Comparator.comparingLong(o -> o.getLastDetectTime()));
@@ -204,25 +274,34 @@ public class NodeDetectService implements MessageProcess {
     nodeStat.setLastDetectTime(System.currentTimeMillis());
   }
 
-  private synchronized void setStatusMessage(NodeStat nodeStat, StatusMessage message) {
-    nodeStat.setStatusMessage(message);
+  // drops the stat of a node whose probe failed, its history is kept for the next detection
+  private synchronized void removeNodeStat(InetSocketAddress socketAddress) {
+    NodeStat nodeStat = nodeStatMap.remove(socketAddress);
+    if (nodeStat != null) {
+      rankedStats.remove(nodeStat);
+      nodeStat.recordFailure();
+      failedStats.put(socketAddress, nodeStat);
+    }
   }
 
-  public synchronized List<Node> getConnectableNodes() {
-    List<NodeStat> stats = new ArrayList<>();
-    List<Node> nodes = new ArrayList<>();
-    nodeStatMap.values().forEach(stat -> {
-      if (stat.getStatusMessage() != null) {
-        stats.add(stat);
-      }
-    });
-
-    if (stats.isEmpty()) {
-      return nodes;
+  private synchronized void updateRank(NodeStat nodeStat, StatusMessage message, long cost) {
+    if (nodeStatMap.get(nodeStat.getSocketAddress()) != nodeStat) {
+      return;
     }
+    // the score is the sort key, so the stat must leave the set before it changes
+    rankedStats.remove(nodeStat);
+    nodeStat.setStatusMessage(message);
+    nodeStat.recordSuccess(cost, message.getRemainConnections());
+    rankedStats.add(nodeStat);
+  }
+
+  public synchronized List<NodeStat> getDetectedStats() {
+    return new ArrayList<>(rankedStats);
+  }
 
-    stats.sort(Comparator.comparingInt(o -> -o.getStatusMessage().getRemainConnections()));
-    stats.forEach(stat -> nodes.add(stat.getNode()));
+  public synchronized List<Node> getConnectableNodes() {
+    List<Node> nodes = new ArrayList<>(rankedStats.size());
+    rankedStats.forEach(stat -> nodes.add(stat.getNode()));
     return nodes;
   }
 
@@ -1,20 +1,50 @@
 package org.tron.p2p.connection.business.detect;
 
+import java.net.InetSocketAddress;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Setter;
 import org.tron.p2p.connection.message.detect.StatusMessage;
 import org.tron.p2p.discover.Node;
 
-import java.net.InetSocketAddress;
-
 @Data
 public class NodeStat {
+
+  private static final int MAX_SAMPLES = 8;
+
+  // rtt that halves the score of a node, in millis
+  private static final long RTT_BASE = 200;
+
+  private static final AtomicLong SEQUENCE = new AtomicLong();
+
+  /**
+   * Orders stats by score from high to low, ties are broken by creation order so that different
+   * stats never compare as equal.
+   */
+  public static final Comparator<NodeStat> SCORE_COMPARATOR = (o1, o2) -> {
+    int result = Double.compare(o2.score, o1.score);
+    return result != 0 ? result : Long.compare(o1.sequence, o2.sequence);
+  };
+
+  private final long sequence = SEQUENCE.incrementAndGet();
   private int totalCount;
+  private int successCount;
   private long lastDetectTime;
   private long lastSuccessDetectTime;
   private StatusMessage statusMessage;
   private Node node;
   private InetSocketAddress socketAddress;
 
+  // ring buffers of the latest probe results
+  private final long[] rttSamples = new long[MAX_SAMPLES];
+  private final int[] remainSamples = new int[MAX_SAMPLES];
+  private int sampleCount;
+  // the sort key of ranked stats, only changed by the probe results
+  @Setter(AccessLevel.NONE)
+  private double score;
+
   public NodeStat(Node node) {
     this.node = node;
     this.socketAddress = node.getPreferInetSocketAddress();
@@ -23,4 +53,71 @@ public class NodeStat {
   public boolean finishDetect() {
     return this.lastDetectTime == this.lastSuccessDetectTime;
   }
+
+  /**
+   * Records a successful probe and recomputes the score. Callers that keep this stat in a
+   * collection ordered by {@link #SCORE_COMPARATOR} must take it out before calling this.
+   */
+  public void recordSuccess(long rtt, int remainConnections) {
+    int pos = sampleCount % MAX_SAMPLES;
+    rttSamples[pos] = rtt;
+    remainSamples[pos] = remainConnections;
+    sampleCount++;
+    successCount++;
+    updateScore();
+  }
+
+  /**
+   * Records a failed probe, counted by {@link #getTotalCount} already, and recomputes the score.
+   */
+  public void recordFailure() {
+    updateScore();
+  }
+
+  public boolean hasSamples() {
+    return sampleCount > 0;
+  }
+
+  public long getAvgRtt() {
+    int size = Math.min(sampleCount, MAX_SAMPLES);
+    if (size == 0) {
+      return 0;
+    }
+    long total = 0;
+    for (int i = 0; i < size; i++) {
+      total += rttSamples[i];
+    }
+    return total / size;
+  }
+
+  public double getSuccessRatio() {
+    if (totalCount == 0) {
+      return 0;
+    }
+    return Math.min(1.0, (double) successCount / totalCount);
+  }
+
+  public int getLatestRemain() {
+    if (sampleCount == 0) {
+      return 0;
+    }
+    return remainSamples[(sampleCount - 1) % MAX_SAMPLES];
+  }
+
+  /**
+   * Difference between the latest and the oldest remaining-slot sample in the window, positive
+   * when the node is freeing up connections.
+   */
+  public int getRemainTrend() {
+    if (sampleCount < 2) {
+      return 0;
+    }
+    int oldest = sampleCount > MAX_SAMPLES ? sampleCount % MAX_SAMPLES : 0;
+    return getLatestRemain() - remainSamples[oldest];
+  }
+
+  private void updateScore() {
+    double expectedRemain = Math.max(getLatestRemain() + getRemainTrend() / 2.0, 0);
+    score = getSuccessRatio() * expectedRemain * RTT_BASE / (RTT_BASE + getAvgRtt());
+  }
 }
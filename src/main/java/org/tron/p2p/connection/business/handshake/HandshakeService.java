@@ -3,6 +3,7 @@ package org.tron.p2p.connection.business.handshake;
 import static org.tron.p2p.connection.ChannelManager.getDisconnectReason;
 import static org.tron.p2p.connection.ChannelManager.logDisconnectReason;
 
+import java.net.Inet4Address;
 import lombok.extern.slf4j.Slf4j;
 import org.tron.p2p.base.Parameter;
 import org.tron.p2p.connection.Channel;
@@ -11,6 +12,8 @@ import org.tron.p2p.connection.business.MessageProcess;
 import org.tron.p2p.connection.message.Message;
 import org.tron.p2p.connection.message.base.P2pDisconnectMessage;
 import org.tron.p2p.connection.message.handshake.HelloMessage;
+import org.tron.p2p.discover.Node;
+import org.tron.p2p.discover.NodeManager;
 import org.tron.p2p.protos.Connect.DisconnectReason;
 
 @Slf4j(topic = "net")
@@ -78,12 +81,18 @@ public class HandshakeService implements MessageProcess {
       sendHelloMsg(channel, DisconnectCode.NORMAL, msg.getTimestamp());
     }
     channel.setFinishHandshake(true);
+    // only peers we dialed vote, an inbound handshake can come from anyone
+    Node to = msg.getTo();
+    if (to != null && channel.isActive()) {
+      NodeManager.voteExternalAddress(channel.getInetAddress(),
+          channel.getInetAddress() instanceof Inet4Address ? to.getHostV4() : to.getHostV6());
+    }
     channel.updateAvgLatency(System.currentTimeMillis() - channel.getStartTime());
     Parameter.handlerList.forEach(h -> h.onConnect(channel));
   }
 
   private void sendHelloMsg(Channel channel, DisconnectCode code, long time) {
-    HelloMessage helloMessage = new HelloMessage(code, time);
+    HelloMessage helloMessage = new HelloMessage(code, time, channel.getInetSocketAddress());
     channel.send(helloMessage);
   }
 
@@ -10,6 +10,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.Executors;
@@ -31,6 +32,7 @@ import org.tron.p2p.connection.message.base.P2pDisconnectMessage;
 import org.tron.p2p.connection.socket.PeerClient;
 import org.tron.p2p.discover.Node;
 import org.tron.p2p.discover.NodeManager;
+import org.tron.p2p.discover.NodeRecord;
 import org.tron.p2p.dns.DnsManager;
 import org.tron.p2p.dns.DnsNode;
 import org.tron.p2p.exception.P2pException;
@@ -170,7 +172,8 @@ public class ConnPoolService extends P2pEventHandler {
     }
 
     if (lackSize > 0 && !p2pConfig.getTreeUrls().isEmpty()) {
-      List<DnsNode> dnsNodes = DnsManager.getDnsNodes();
+      // the shared list is read only
+      List<DnsNode> dnsNodes = new ArrayList<>(DnsManager.getDnsNodes());
       List<DnsNode> filtered = new ArrayList<>();
       Collections.shuffle(dnsNodes);
       for (DnsNode node : dnsNodes) {
@@ -206,14 +209,27 @@ public class ConnPoolService extends P2pEventHandler {
       List<Node> connectableNodes, int limit) {
     List<Node> filtered = new ArrayList<>();
     Set<InetSocketAddress> dynamicInetInUse = new HashSet<>(inetInUse);
+    Map<String, byte[]> required = p2pConfig.getRequiredCapabilities();
     for (Node node : connectableNodes) {
+      // a node whose record lacks a required capability would fail at the handshake, the record
+      // is only verified here, for nodes we may dial
+      NodeRecord record = required.isEmpty() ? null : node.getRecord();
+      if (record != null && !record.matches(required)) {
+        continue;
+      }
       if (validNode(node, nodesInUse, inetInUse, dynamicInetInUse)) {
         filtered.add((Node) node.clone());
         addNode(dynamicInetInUse, node);
       }
     }
 
-    filtered.sort(Comparator.comparingLong(node -> -node.getUpdateTime()));
+    // nodes known to match go first, nodes without a record after them
+    Comparator<Node> comparator = Comparator.comparingLong(node -> -node.getUpdateTime());
+    if (!required.isEmpty()) {
+      comparator = Comparator.<Node>comparingInt(node -> node.getRecord() != null ? 0 : 1)
+          .thenComparing(comparator);
+    }
+    filtered.sort(comparator);
     return CollectionUtils.truncate(filtered, limit);
   }
 
@@ -1,5 +1,8 @@
 package org.tron.p2p.connection.message.handshake;
 
+import com.google.protobuf.ByteString;
+import java.net.Inet4Address;
+import java.net.InetSocketAddress;
 import org.tron.p2p.base.Parameter;
 import org.tron.p2p.connection.business.handshake.DisconnectCode;
 import org.tron.p2p.connection.message.Message;
@@ -7,6 +10,7 @@ import org.tron.p2p.connection.message.MessageType;
 import org.tron.p2p.discover.Node;
 import org.tron.p2p.protos.Connect;
 import org.tron.p2p.protos.Discover;
+import org.tron.p2p.utils.ByteArray;
 import org.tron.p2p.utils.NetUtil;
 
 public class HelloMessage extends Message {
@@ -19,14 +23,34 @@ public class HelloMessage extends Message {
   }
 
   public HelloMessage(DisconnectCode code, long time) {
+    this(code, time, null);
+  }
+
+  /**
+   * @param remote the address of the peer as seen by us, sent back so that the peer learns its
+   * external address
+   */
+  public HelloMessage(DisconnectCode code, long time, InetSocketAddress remote) {
     super(MessageType.HANDSHAKE_HELLO, null);
     Discover.Endpoint endpoint = Parameter.getHomeNode();
-    this.helloMessage = Connect.HelloMessage.newBuilder()
+    Connect.HelloMessage.Builder builder = Connect.HelloMessage.newBuilder()
       .setFrom(endpoint)
       .setNetworkId(Parameter.p2pConfig.getNetworkId())
       .setCode(code.getValue())
       .setVersion(Parameter.version)
-      .setTimestamp(time).build();
+      .setTimestamp(time);
+    if (remote != null && remote.getAddress() != null) {
+      ByteString address = ByteString.copyFrom(
+          ByteArray.fromString(remote.getAddress().getHostAddress()));
+      Discover.Endpoint.Builder to = Discover.Endpoint.newBuilder().setPort(remote.getPort());
+      if (remote.getAddress() instanceof Inet4Address) {
+        to.setAddress(address);
+      } else {
+        to.setAddressIpv6(address);
+      }
+      builder.setTo(to);
+    }
+    this.helloMessage = builder.build();
     this.data = helloMessage.toByteArray();
   }
 
@@ -50,6 +74,13 @@ public class HelloMessage extends Message {
     return NetUtil.getNode(helloMessage.getFrom());
   }
 
+  /**
+   * How the peer sees our address, null if the peer does not send it.
+   */
+  public Node getTo() {
+    return helloMessage.hasTo() ? NetUtil.getNode(helloMessage.getTo()) : null;
+  }
+
   @Override
   public String toString() {
     return "[HelloMessage: " + helloMessage;
@@ -2,8 +2,10 @@ package org.tron.p2p.discover;
 
 import org.tron.p2p.discover.socket.EventHandler;
 import org.tron.p2p.discover.socket.UdpEvent;
+import org.tron.p2p.stats.KadStats;
 
 import java.util.List;
+import java.util.Map;
 
 public interface DiscoverService extends EventHandler {
 
@@ -19,6 +21,12 @@ public interface DiscoverService extends EventHandler {
 
   Node getPublicHomeNode();
 
+  void updateHomeNode();
+
+  void updateCapabilities(Map<String, byte[]> capabilities);
+
+  KadStats getKadStats();
+
   void channelActivated();
 
   void handleEvent(UdpEvent event);
@@ -0,0 +1,108 @@
+package org.tron.p2p.discover;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.net.InetAddresses;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.apache.commons.lang3.StringUtils;
+import org.tron.p2p.discover.socket.RateLimitFilter;
+
+/**
+ * Collects how peers see our external address, from the destination of pings of bonded peers and
+ * from handshakes of connections we dialed. Each network prefix (/24 for ipv4, /48 for ipv6) of the
+ * peers holds one vote per address family, so a single host or subnet can not outvote the others,
+ * and votes expire so that a changed nat mapping replaces the old address. The quorum grows with
+ * the number of bonded peers, a few subnets can not move the address of a well connected node.
+ */
+public class ExternalAddressVoter {
+
+  // distinct voting prefixes that must agree on an address, at least and at most
+  static final int MIN_QUORUM = 5;
+  static final int MAX_QUORUM = 20;
+  // one more vote is required for every this many bonded peers
+  static final int PEERS_PER_VOTE = 5;
+  static final long VOTE_EXPIRE = 30 * 60 * 1000L;
+  private static final int MAX_VOTERS = 500;
+
+  private final Cache<Long, String> votesV4;
+  private final Cache<Long, String> votesV6;
+  private final IntSupplier bondedPeers;
+
+  public ExternalAddressVoter() {
+    this(() -> 0);
+  }
+
+  public ExternalAddressVoter(IntSupplier bondedPeers) {
+    this(bondedPeers, Ticker.systemTicker());
+  }
+
+  ExternalAddressVoter(IntSupplier bondedPeers, Ticker ticker) {
+    this.bondedPeers = bondedPeers;
+    votesV4 = newVotes(ticker);
+    votesV6 = newVotes(ticker);
+  }
+
+  private static Cache<Long, String> newVotes(Ticker ticker) {
+    return CacheBuilder.newBuilder().maximumSize(MAX_VOTERS)
+        .expireAfterWrite(VOTE_EXPIRE, TimeUnit.MILLISECONDS).ticker(ticker).build();
+  }
+
+  /**
+   * Counts the address the voter sees for us, replacing its earlier vote.
+   *
+   * @return the address agreed by a quorum and a majority of the voters of its family, null if
+   * there is none yet or the vote was ignored
+   */
+  public String vote(InetAddress voter, String observed) {
+    if (voter == null || StringUtils.isEmpty(observed) || !InetAddresses.isInetAddress(observed)) {
+      return null;
+    }
+    InetAddress address = InetAddresses.forString(observed);
+    if (!isPublic(address) || voter.isLoopbackAddress()) {
+      return null;
+    }
+    Cache<Long, String> votes = address instanceof Inet4Address ? votesV4 : votesV6;
+    votes.put(RateLimitFilter.prefix(voter), address.getHostAddress());
+    return tally(votes);
+  }
+
+  public String getIp() {
+    return tally(votesV4);
+  }
+
+  public String getIpv6() {
+    return tally(votesV6);
+  }
+
+  int quorum() {
+    return Math.max(MIN_QUORUM, Math.min(MAX_QUORUM, bondedPeers.getAsInt() / PEERS_PER_VOTE));
+  }
+
+  private String tally(Cache<Long, String> votes) {
+    int quorum = quorum();
+    Map<String, Integer> counts = new HashMap<>();
+    votes.asMap().values().forEach(address -> counts.merge(address, 1, Integer::sum));
+    int total = counts.values().stream().mapToInt(Integer::intValue).sum();
+    for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+      if (entry.getValue() >= quorum && entry.getValue() * 2 > total) {
+        return entry.getKey();
+      }
+    }
+    return null;
+  }
+
+  // private, loopback and link local addresses are what a peer in the same network sees
+  static boolean isPublic(InetAddress address) {
+    byte[] bytes = address.getAddress();
+    boolean uniqueLocal = bytes.length == 16 && (bytes[0] & 0xfe) == 0xfc;
+    return !(address.isAnyLocalAddress() || address.isLoopbackAddress()
+        || address.isLinkLocalAddress() || address.isSiteLocalAddress()
+        || address.isMulticastAddress() || uniqueLocal);
+  }
+}
@@ -3,12 +3,14 @@ package org.tron.p2p.discover;
 import java.io.Serializable;
 import java.net.Inet4Address;
 import java.net.InetSocketAddress;
+import java.util.Objects;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.bouncycastle.util.encoders.Hex;
 import org.tron.p2p.base.Parameter;
+import org.tron.p2p.protos.Discover;
 import org.tron.p2p.utils.NetUtil;
 
 @Slf4j(topic = "net")
@@ -18,6 +20,9 @@ public class Node implements Serializable, Cloneable {
 
   private byte[] id;
 
+  // built from id on first use
+  private transient NodeId nodeId;
+
   @Getter
   protected String hostV4;
 
@@ -29,11 +34,17 @@ public class Node implements Serializable, Cloneable {
   @Setter
   private int bindPort;
 
+  @Getter
   @Setter
   private int p2pVersion;
 
   private long updateTime;
 
+  // signed capabilities announced by the node, null if none is known
+  private transient volatile NodeRecord record;
+  // newer record received from the network, its signature is checked on first use
+  private transient volatile Discover.NodeRecord pendingRecord;
+
   public Node(InetSocketAddress address) {
     this.id = NetUtil.getNodeId();
     if (address.getAddress() instanceof Inet4Address) {
@@ -81,6 +92,71 @@ public class Node implements Serializable, Cloneable {
     }
   }
 
+  /**
+   * Replaces the hosts of the home node when its external address changes, unlike the update
+   * methods that only fill a missing host.
+   */
+  public void setHosts(String hostV4, String hostV6) {
+    this.hostV4 = hostV4;
+    this.hostV6 = hostV6;
+    formatHostV6();
+  }
+
+  /**
+   * The latest valid record of the node, null if none is known. A record received from the
+   * network is verified here, on first use, rather than when the packet is decoded.
+   */
+  public NodeRecord getRecord() {
+    if (pendingRecord != null) {
+      verifyRecord();
+    }
+    return record;
+  }
+
+  /**
+   * The record verified so far, a received record that was not used yet is left unverified.
+   */
+  public NodeRecord getVerifiedRecord() {
+    return record;
+  }
+
+  /**
+   * Keeps the record if it is newer than the known one.
+   */
+  public synchronized void updateRecord(NodeRecord record) {
+    NodeRecord old = this.record;
+    if (record != null && (old == null || record.getSeq() > old.getSeq())) {
+      this.record = record;
+    }
+  }
+
+  /**
+   * Keeps a received record for verification on first use if it is newer than the verified one,
+   * the last one received wins.
+   */
+  public synchronized void offerRecord(Discover.NodeRecord proto) {
+    NodeRecord old = this.record;
+    if (proto != null && (old == null || proto.getSeq() > old.getSeq())) {
+      this.pendingRecord = proto;
+    }
+  }
+
+  /**
+   * Takes over the records of another instance of the same node without verifying them.
+   */
+  public void updateRecord(Node other) {
+    updateRecord(other.record);
+    offerRecord(other.pendingRecord);
+  }
+
+  private synchronized void verifyRecord() {
+    Discover.NodeRecord proto = pendingRecord;
+    if (proto != null) {
+      pendingRecord = null;
+      updateRecord(NodeRecord.parse(id, proto));
+    }
+  }
+
   //use standard ipv6 format
   private void formatHostV6() {
     if (StringUtils.isNotEmpty(this.hostV6)) {
@@ -117,10 +193,31 @@ public class Node implements Serializable, Cloneable {
 
   public void setId(byte[] id) {
     this.id = id;
+    this.nodeId = null;
+  }
+
+  public NodeId getNodeId() {
+    NodeId result = nodeId;
+    if (result == null && id != null) {
+      result = new NodeId(id);
+      nodeId = result;
+    }
+    return result;
   }
 
+  /**
+   * The preferred host, same as the address of {@link #getPreferInetSocketAddress()} but without
+   * building the socket address.
+   */
   public String getHostKey() {
-    return getPreferInetSocketAddress().getAddress().getHostAddress();
+    if (StringUtils.isNotEmpty(hostV4) && StringUtils.isNotEmpty(Parameter.p2pConfig.getIp())) {
+      return hostV4;
+    } else if (StringUtils.isNotEmpty(hostV6) && StringUtils.isNotEmpty(
+        Parameter.p2pConfig.getIpv6())) {
+      return hostV6;
+    } else {
+      return null;
+    }
   }
 
   public int getPort() {
@@ -159,7 +256,7 @@ public class Node implements Serializable, Cloneable {
 
   @Override
   public int hashCode() {
-    return this.format().hashCode();
+    return Objects.hash(hostV4, hostV6, port);
   }
 
   @Override
@@ -173,7 +270,7 @@ public class Node implements Serializable, Cloneable {
     }
 
     if (o.getClass() == getClass()) {
-      return StringUtils.equals(getIdString(), ((Node) o).getIdString());
+      return Objects.equals(getNodeId(), ((Node) o).getNodeId());
     }
 
     return false;
@@ -0,0 +1,88 @@
+package org.tron.p2p.discover;
+
+import java.util.Arrays;
+import org.bouncycastle.util.encoders.Hex;
+
+/**
+ * Immutable node id packed into big-endian 64-bit words, so that prefix and XOR distance
+ * computations work on whole words and never allocate.
+ */
+public final class NodeId {
+
+  private final long[] words;
+  private final int bitLength;
+  private final int hash;
+
+  public NodeId(byte[] id) {
+    this.bitLength = id.length * 8;
+    this.words = new long[(id.length + 7) / 8];
+    for (int i = 0; i < id.length; i++) {
+      words[i / 8] |= (id[i] & 0xffL) << (56 - (i % 8) * 8);
+    }
+    this.hash = Arrays.hashCode(words) * 31 + bitLength;
+  }
+
+  public int getBitLength() {
+    return bitLength;
+  }
+
+  /**
+   * Number of leading bits both ids share, at most the bit length of the shorter id.
+   */
+  public int commonPrefixLength(NodeId other) {
+    int bits = Math.min(bitLength, other.bitLength);
+    int n = Math.min(words.length, other.words.length);
+    for (int i = 0; i < n; i++) {
+      long x = words[i] ^ other.words[i];
+      if (x != 0) {
+        return Math.min(i * 64 + Long.numberOfLeadingZeros(x), bits);
+      }
+    }
+    return bits;
+  }
+
+  /**
+   * Compares the XOR distances of two ids to this one, negative if {@code a} is closer.
+   */
+  public int compareDistance(NodeId a, NodeId b) {
+    int n = Math.min(words.length, Math.min(a.words.length, b.words.length));
+    for (int i = 0; i < n; i++) {
+      int result = Long.compareUnsigned(words[i] ^ a.words[i], words[i] ^ b.words[i]);
+      if (result != 0) {
+        return result;
+      }
+    }
+    return 0;
+  }
+
+  public byte[] toByteArray() {
+    byte[] id = new byte[bitLength / 8];
+    for (int i = 0; i < id.length; i++) {
+      id[i] = (byte) (words[i / 8] >>> (56 - (i % 8) * 8));
+    }
+    return id;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    NodeId other = (NodeId) o;
+    return hash == other.hash && bitLength == other.bitLength
+        && Arrays.equals(words, other.words);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public String toString() {
+    return Hex.toHexString(toByteArray());
+  }
+}
@@ -1,25 +1,98 @@
 package org.tron.p2p.discover;
 
+import com.google.common.net.InetAddresses;
+import java.net.Inet4Address;
+import java.net.InetAddress;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.p2p.P2pConfig;
 import org.tron.p2p.base.Parameter;
 import org.tron.p2p.discover.protocol.kad.KadService;
 import org.tron.p2p.discover.socket.DiscoverServer;
+import org.tron.p2p.stats.KadStats;
 
+@Slf4j(topic = "net")
 public class NodeManager {
 
   private static DiscoverService discoverService;
   private static DiscoverServer discoverServer;
+  private static ExternalAddressVoter addressVoter = new ExternalAddressVoter();
+
+  private static volatile boolean closed;
 
   public static void init() {
+    init(CompletableFuture.completedFuture(null));
+  }
+
+  /**
+   * The discovery server only starts once the local addresses are known, nodes are not reachable
+   * without them.
+   */
+  public static void init(CompletableFuture<Void> addressLookup) {
+    closed = false;
+    discoverServer = null;
     discoverService = new KadService();
+    DiscoverService service = discoverService;
+    addressVoter = new ExternalAddressVoter(() -> service.getTableNodes().size());
     discoverService.init();
     if (Parameter.p2pConfig.isDiscoverEnable()) {
       discoverServer = new DiscoverServer();
+    }
+    addressLookup.whenComplete((v, e) -> onAddressesReady());
+  }
+
+  private static synchronized void onAddressesReady() {
+    if (closed) {
+      return;
+    }
+    discoverService.updateHomeNode();
+    if (discoverServer != null) {
       discoverServer.init(discoverService);
     }
   }
 
+  /**
+   * Counts how a peer sees our address, the home node follows the address once a quorum of peers
+   * agrees on it.
+   */
+  public static void voteExternalAddress(InetAddress voter, String observed) {
+    P2pConfig config = Parameter.p2pConfig;
+    if (!config.isIpVoteEnable()) {
+      return;
+    }
+    String address = addressVoter.vote(voter, observed);
+    if (address == null) {
+      return;
+    }
+    boolean changed = InetAddresses.forString(address) instanceof Inet4Address
+        ? config.updateExternalIp(address) : config.updateExternalIpv6(address);
+    if (changed) {
+      log.info("External address changed to {}, agreed by peers", address);
+      synchronized (NodeManager.class) {
+        if (!closed && discoverService != null) {
+          discoverService.updateHomeNode();
+        }
+      }
+    }
+  }
+
+  /**
+   * The ipv4 address a quorum of peers currently agrees on, null if there is none.
+   */
+  public static String getVotedIp() {
+    return addressVoter.getIp();
+  }
+
+  public static String getVotedIpv6() {
+    return addressVoter.getIpv6();
+  }
+
   public static void close() {
+    synchronized (NodeManager.class) {
+      closed = true;
+    }
     if (discoverService != null) {
       discoverService.close();
     }
@@ -36,6 +109,14 @@ public class NodeManager {
     return discoverService.getPublicHomeNode();
   }
 
+  public static void updateCapabilities(Map<String, byte[]> capabilities) {
+    discoverService.updateCapabilities(capabilities);
+  }
+
+  public static KadStats getKadStats() {
+    return discoverService == null ? null : discoverService.getKadStats();
+  }
+
   public static List<Node> getTableNodes() {
     return discoverService.getTableNodes();
   }
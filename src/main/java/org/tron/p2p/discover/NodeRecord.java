@@ -0,0 +1,179 @@
+package org.tron.p2p.discover;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.primitives.Longs;
+import com.google.protobuf.ByteString;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.p2p.base.Constant;
+import org.tron.p2p.protos.Discover;
+import org.tron.p2p.protos.Discover.NodeRecord.Capability;
+import org.tron.p2p.utils.ByteArray;
+import org.web3j.crypto.ECKeyPair;
+import org.web3j.crypto.Sign;
+import org.web3j.crypto.Sign.SignatureData;
+
+/**
+ * Versioned key/value capabilities of a node, signed with the secp256k1 key whose 64-byte public
+ * key is the node id. A record is carried in the node's endpoint, so it travels in Ping, Pong and
+ * Neighbours, and a higher sequence number replaces an older record of the same node.
+ */
+@Slf4j(topic = "net")
+public class NodeRecord {
+
+  // well-known capability keys
+  public static final String ROLE = "role";       // e.g. "full" or "light"
+  public static final String HEIGHT = "height";   // chain height hint, 8 bytes big-endian
+  public static final String CODECS = "codecs";   // supported codecs, comma separated
+
+  private static final int MAX_VERIFIED = 10000;
+  private static final int MAX_REJECTED = 10000;
+
+  // latest verified record per node, a record that is not newer is never verified again
+  private static final Cache<NodeId, NodeRecord> verified = CacheBuilder.newBuilder()
+      .maximumSize(MAX_VERIFIED).build();
+  // records that failed verification, keyed by node id and the whole signed record, so that a
+  // bad record is never verified twice and a forged copy can not shadow the genuine one
+  private static final Cache<ByteString, Boolean> rejected = CacheBuilder.newBuilder()
+      .maximumSize(MAX_REJECTED).build();
+
+  @Getter
+  private final long seq;
+
+  private final Map<String, byte[]> capabilities;
+
+  private final Discover.NodeRecord proto;
+
+  private NodeRecord(Discover.NodeRecord proto) {
+    Map<String, byte[]> map = new TreeMap<>();
+    for (Capability capability : proto.getCapabilitiesList()) {
+      map.put(capability.getKey(), capability.getValue().toByteArray());
+    }
+    this.seq = proto.getSeq();
+    this.capabilities = Collections.unmodifiableMap(map);
+    this.proto = proto;
+  }
+
+  /**
+   * Node id owned by the private key, the uncompressed public key without its prefix.
+   */
+  public static byte[] nodeIdFromKey(String privateKey) {
+    BigInteger pubKey = Sign.publicKeyFromPrivate(new BigInteger(privateKey, 16));
+    return toNodeId(pubKey);
+  }
+
+  public static NodeRecord sign(String privateKey, long seq, Map<String, byte[]> capabilities) {
+    Discover.NodeRecord.Builder builder = Discover.NodeRecord.newBuilder().setSeq(seq);
+    new TreeMap<>(capabilities).forEach((k, v) -> builder.addCapabilities(
+        Capability.newBuilder().setKey(k).setValue(ByteString.copyFrom(v))));
+    BigInteger privKey = new BigInteger(privateKey, 16);
+    ECKeyPair keyPair = new ECKeyPair(privKey, Sign.publicKeyFromPrivate(privKey));
+    SignatureData signature = Sign.signMessage(
+        content(toNodeId(keyPair.getPublicKey()), builder.build()), keyPair, true);
+    byte[] sig = new byte[65];
+    System.arraycopy(signature.getR(), 0, sig, 0, 32);
+    System.arraycopy(signature.getS(), 0, sig, 32, 32);
+    sig[64] = signature.getV()[0];
+    return new NodeRecord(builder.setSignature(ByteString.copyFrom(sig)).build());
+  }
+
+  /**
+   * Returns the latest valid record known for the node, null if the record is not signed by the
+   * node id and no record of the node is known.
+   */
+  public static NodeRecord parse(byte[] nodeId, Discover.NodeRecord proto) {
+    if (nodeId == null || nodeId.length != Constant.NODE_ID_LEN) {
+      return null;
+    }
+    NodeId id = new NodeId(nodeId);
+    NodeRecord known = verified.getIfPresent(id);
+    if (known != null && known.seq >= proto.getSeq()) {
+      return known;
+    }
+    ByteString key = ByteString.copyFrom(nodeId).concat(proto.toByteString());
+    if (rejected.getIfPresent(key) != null) {
+      return known;
+    }
+    if (!verify(nodeId, proto)) {
+      rejected.put(key, Boolean.TRUE);
+      log.debug("Drop node record with bad signature, node {}", id);
+      return known;
+    }
+    NodeRecord record = new NodeRecord(proto);
+    verified.asMap().merge(id, record, (a, b) -> a.seq >= b.seq ? a : b);
+    return record;
+  }
+
+  private static boolean verify(byte[] nodeId, Discover.NodeRecord proto) {
+    byte[] sig = proto.getSignature().toByteArray();
+    if (sig.length != 65) {
+      return false;
+    }
+    int recId = sig[64] < 27 ? sig[64] + 27 : sig[64];
+    SignatureData signature = new SignatureData((byte) recId, ByteArray.subArray(sig, 0, 32),
+        ByteArray.subArray(sig, 32, 64));
+    try {
+      BigInteger pubKey = Sign.signedMessageToKey(content(nodeId, proto), signature);
+      return Arrays.equals(nodeId, toNodeId(pubKey));
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  // what is signed: the node id followed by the record without its signature
+  private static byte[] content(byte[] nodeId, Discover.NodeRecord proto) {
+    byte[] unsigned = proto.toBuilder().clearSignature().build().toByteArray();
+    byte[] content = new byte[nodeId.length + unsigned.length];
+    System.arraycopy(nodeId, 0, content, 0, nodeId.length);
+    System.arraycopy(unsigned, 0, content, nodeId.length, unsigned.length);
+    return content;
+  }
+
+  private static byte[] toNodeId(BigInteger pubKey) {
+    byte[] bytes = pubKey.toByteArray();
+    byte[] id = new byte[Constant.NODE_ID_LEN];
+    int length = Math.min(bytes.length, id.length);
+    System.arraycopy(bytes, bytes.length - length, id, id.length - length, length);
+    return id;
+  }
+
+  public Discover.NodeRecord toProto() {
+    return proto;
+  }
+
+  public Map<String, byte[]> getCapabilities() {
+    return capabilities;
+  }
+
+  public byte[] get(String key) {
+    return capabilities.get(key);
+  }
+
+  public long getHeight() {
+    byte[] height = capabilities.get(HEIGHT);
+    return height == null || height.length != 8 ? 0 : Longs.fromByteArray(height);
+  }
+
+  /**
+   * True if the record announces every required capability with the required value.
+   */
+  public boolean matches(Map<String, byte[]> required) {
+    for (Map.Entry<String, byte[]> entry : required.entrySet()) {
+      if (!Arrays.equals(entry.getValue(), capabilities.get(entry.getKey()))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "NodeRecord{seq=" + seq + ", capabilities=" + capabilities.keySet() + "}";
+  }
+}
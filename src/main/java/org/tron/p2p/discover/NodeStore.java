@@ -0,0 +1,237 @@
+package org.tron.p2p.discover;
+
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.tron.p2p.P2pConfig;
+import org.tron.p2p.base.Parameter;
+import org.tron.p2p.connection.ChannelManager;
+import org.tron.p2p.connection.business.detect.NodeDetectService;
+import org.tron.p2p.connection.business.detect.NodeStat;
+import org.tron.p2p.discover.message.kad.KadMessage;
+import org.tron.p2p.protos.Discover.StoredNode;
+import org.tron.p2p.protos.Discover.StoredNodes;
+
+/**
+ * Keeps a snapshot of the known nodes, their probe history and the ban list on disk, so that a
+ * restarted node can reconnect without going through the seed nodes again. The snapshot is
+ * written to a temporary file and renamed into place, a crash never leaves a partial file behind.
+ */
+@Slf4j(topic = "net")
+public class NodeStore {
+
+  private static final String FILE_NAME = "nodes.db";
+  private static final int MAX_NODES = 5000;
+  private static final long NODE_EXPIRE_TIME = 24 * 60 * 60 * 1000L;
+  private static final long SNAPSHOT_INTERVAL = 60;
+
+  private static volatile List<StoredNode> storedNodes = Collections.emptyList();
+  private static volatile List<StoredNodes.Ban> storedBans = Collections.emptyList();
+
+  private static Path path;
+  private static ScheduledExecutorService executor;
+
+  public static void init() {
+    String dataDir = Parameter.p2pConfig.getDataDir();
+    if (StringUtils.isEmpty(dataDir)) {
+      return;
+    }
+    path = Paths.get(dataDir, FILE_NAME);
+    StoredNodes snapshot = compact(read(path), System.currentTimeMillis());
+    storedNodes = snapshot.getNodesList();
+    storedBans = snapshot.getBansList();
+    log.info("Load {} nodes and {} bans from {}", storedNodes.size(), storedBans.size(), path);
+    restoreAddresses(snapshot, System.currentTimeMillis());
+
+    executor = Executors.newSingleThreadScheduledExecutor(
+        new BasicThreadFactory.Builder().namingPattern("nodeStore").build());
+    executor.scheduleWithFixedDelay(() -> {
+      try {
+        write(path, collect(System.currentTimeMillis()));
+      } catch (Exception e) {
+        log.warn("Snapshot nodes to {} failed, {}", path, e.getMessage());
+      }
+    }, SNAPSHOT_INTERVAL, SNAPSHOT_INTERVAL, TimeUnit.SECONDS);
+  }
+
+  public static void close() {
+    storedNodes = Collections.emptyList();
+    storedBans = Collections.emptyList();
+    if (executor == null) {
+      return;
+    }
+    executor.shutdownNow();
+    executor = null;
+    try {
+      write(path, collect(System.currentTimeMillis()));
+    } catch (Exception e) {
+      log.warn("Snapshot nodes to {} failed, {}", path, e.getMessage());
+    }
+  }
+
+  /**
+   * Nodes loaded at startup, most recently seen first.
+   */
+  public static List<StoredNode> getStoredNodes() {
+    return storedNodes;
+  }
+
+  public static List<StoredNodes.Ban> getStoredBans() {
+    return storedBans;
+  }
+
+  public static InetAddress getAddress(StoredNodes.Ban ban) {
+    try {
+      return InetAddress.getByAddress(ban.getAddress().toByteArray());
+    } catch (UnknownHostException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Starts from the external addresses of the last run instead of looking them up again, peers
+   * correct them by voting if they changed meanwhile.
+   */
+  static void restoreAddresses(StoredNodes snapshot, long now) {
+    P2pConfig config = Parameter.p2pConfig;
+    if (!config.isIpVoteEnable() || now - snapshot.getTimestamp() > NODE_EXPIRE_TIME) {
+      return;
+    }
+    if (StringUtils.isNotEmpty(snapshot.getExternalIp())) {
+      config.updateExternalIp(snapshot.getExternalIp());
+    }
+    if (StringUtils.isNotEmpty(snapshot.getExternalIpv6())) {
+      config.updateExternalIpv6(snapshot.getExternalIpv6());
+    }
+  }
+
+  static StoredNodes read(Path path) {
+    if (!Files.exists(path)) {
+      return StoredNodes.getDefaultInstance();
+    }
+    try {
+      return StoredNodes.parseFrom(Files.readAllBytes(path));
+    } catch (Exception e) {
+      log.warn("Read nodes from {} failed, {}", path, e.getMessage());
+      return StoredNodes.getDefaultInstance();
+    }
+  }
+
+  static void write(Path path, StoredNodes snapshot) throws IOException {
+    Path parent = path.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+    Path tmp = Files.createTempFile(parent, FILE_NAME, ".tmp");
+    try {
+      Files.write(tmp, snapshot.toByteArray());
+      Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Drops expired nodes and bans, and keeps at most {@link #MAX_NODES} of the most recently seen
+   * nodes.
+   */
+  static StoredNodes compact(StoredNodes snapshot, long now) {
+    List<StoredNode> nodes = snapshot.getNodesList().stream()
+        .filter(node -> now - node.getUpdateTime() <= NODE_EXPIRE_TIME)
+        .sorted(Comparator.comparingLong(StoredNode::getUpdateTime).reversed())
+        .limit(MAX_NODES)
+        .collect(Collectors.toList());
+    List<StoredNodes.Ban> bans = snapshot.getBansList().stream()
+        .filter(ban -> ban.getExpireTime() > now)
+        .collect(Collectors.toList());
+    return StoredNodes.newBuilder()
+        .setTimestamp(snapshot.getTimestamp())
+        .addAllNodes(nodes)
+        .addAllBans(bans)
+        .setExternalIp(snapshot.getExternalIp())
+        .setExternalIpv6(snapshot.getExternalIpv6())
+        .build();
+  }
+
+  private static StoredNodes collect(long now) {
+    Map<InetSocketAddress, NodeStat> stats = new HashMap<>();
+    NodeDetectService detectService = ChannelManager.getNodeDetectService();
+    if (detectService != null) {
+      detectService.getDetectedStats().forEach(s -> stats.put(s.getSocketAddress(), s));
+    }
+
+    List<StoredNode> nodes = new ArrayList<>();
+    for (Node node : NodeManager.getAllNodes()) {
+      InetSocketAddress address = node.getPreferInetSocketAddress();
+      if (address != null) {
+        nodes.add(buildNode(node, stats.remove(address)));
+      }
+    }
+    // detected nodes that came from dns trees rather than discovery
+    stats.values().forEach(stat -> nodes.add(buildNode(stat.getNode(), stat)));
+
+    List<StoredNodes.Ban> bans = new ArrayList<>();
+    ChannelManager.getBannedNodes().asMap().forEach((address, expireTime) ->
+        bans.add(buildBan(address, expireTime, false)));
+    NodeDetectService.getBadNodesCache().asMap().forEach((address, expireTime) -> {
+      if (expireTime > now) {
+        bans.add(buildBan(address, expireTime, true));
+      }
+    });
+
+    P2pConfig config = Parameter.p2pConfig;
+    return compact(StoredNodes.newBuilder()
+        .setTimestamp(now)
+        .addAllNodes(nodes)
+        .addAllBans(bans)
+        .setExternalIp(StringUtils.defaultString(votedAddress(config.getIp(),
+            NodeManager.getVotedIp())))
+        .setExternalIpv6(StringUtils.defaultString(votedAddress(config.getIpv6(),
+            NodeManager.getVotedIpv6())))
+        .build(), now);
+  }
+
+  // only an address in use that peers confirmed is kept, a looked up one is looked up again
+  private static String votedAddress(String current, String voted) {
+    return voted != null && voted.equals(current) ? voted : null;
+  }
+
+  private static StoredNode buildNode(Node node, NodeStat stat) {
+    StoredNode.Builder builder = StoredNode.newBuilder()
+        .setEndpoint(KadMessage.getEndpointFromNode(node))
+        .setNetworkId(node.getP2pVersion())
+        .setUpdateTime(node.getUpdateTime());
+    if (stat != null) {
+      builder.setAvgRtt(stat.getAvgRtt())
+          .setRemainConnections(stat.getLatestRemain())
+          .setLastDetectTime(stat.getLastSuccessDetectTime());
+    }
+    return builder.build();
+  }
+
+  private static StoredNodes.Ban buildBan(InetAddress address, long expireTime,
+      boolean detectFailed) {
+    return StoredNodes.Ban.newBuilder()
+        .setAddress(ByteString.copyFrom(address.getAddress()))
+        .setExpireTime(expireTime)
+        .setDetectFailed(detectFailed)
+        .build();
+  }
+}
@@ -1,11 +1,15 @@
 package org.tron.p2p.discover.message;
 
+import com.google.protobuf.CodedInputStream;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import org.apache.commons.lang3.ArrayUtils;
 import org.tron.p2p.discover.message.kad.FindNodeMessage;
 import org.tron.p2p.discover.message.kad.NeighborsMessage;
 import org.tron.p2p.discover.message.kad.PingMessage;
 import org.tron.p2p.discover.message.kad.PongMessage;
 import org.tron.p2p.exception.P2pException;
+import org.tron.p2p.protos.Discover;
 
 public abstract class Message {
   protected MessageType type;
@@ -17,21 +21,30 @@ public abstract class Message {
   }
 
   public static Message parse(byte[] encode) throws Exception {
-    byte type = encode[0];
-    byte[] data = ArrayUtils.subarray(encode, 1, encode.length);
+    return parse(Unpooled.wrappedBuffer(encode));
+  }
+
+  /**
+   * Parses the readable bytes of the buffer, the first one being the message type. The protobuf
+   * body is read in place, without copying it out of the buffer first.
+   */
+  public static Message parse(ByteBuf buf) throws Exception {
+    byte type = buf.getByte(buf.readerIndex());
+    CodedInputStream input = CodedInputStream.newInstance(
+        buf.nioBuffer(buf.readerIndex() + 1, buf.readableBytes() - 1));
     Message message;
     switch (MessageType.fromByte(type)) {
       case KAD_PING:
-        message = new PingMessage(data);
+        message = new PingMessage(Discover.PingMessage.parseFrom(input));
         break;
       case KAD_PONG:
-        message = new PongMessage(data);
+        message = new PongMessage(Discover.PongMessage.parseFrom(input));
         break;
       case KAD_FIND_NODE:
-        message = new FindNodeMessage(data);
+        message = new FindNodeMessage(Discover.FindNeighbours.parseFrom(input));
         break;
       case KAD_NEIGHBORS:
-        message = new NeighborsMessage(data);
+        message = new NeighborsMessage(Discover.Neighbours.parseFrom(input));
         break;
       default:
         throw new P2pException(P2pException.TypeEnum.NO_SUCH_MESSAGE, "type=" + type);
@@ -46,14 +59,29 @@ public abstract class Message {
     return this.type;
   }
 
+  /**
+   * The encoded body, parsed messages only build it when asked.
+   */
   public byte[] getData() {
+    if (this.data == null) {
+      this.data = encode();
+    }
     return this.data;
   }
 
   public byte[] getSendData() {
-    return ArrayUtils.add(this.data, 0, type.getType());
+    return ArrayUtils.add(getData(), 0, type.getType());
   }
 
+  /**
+   * Length of {@link #getSendData()} without building it.
+   */
+  public int getSendLength() {
+    return getData().length + 1;
+  }
+
+  protected abstract byte[] encode();
+
   public abstract boolean valid();
 
   @Override
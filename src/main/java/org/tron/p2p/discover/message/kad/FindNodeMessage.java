@@ -12,18 +12,33 @@ public class FindNodeMessage extends KadMessage {
 
   private Discover.FindNeighbours findNeighbours;
 
+  private Node from;
+
   public FindNodeMessage(byte[] data) throws Exception {
     super(MessageType.KAD_FIND_NODE, data);
     this.findNeighbours = Discover.FindNeighbours.parseFrom(data);
   }
 
+  public FindNodeMessage(Discover.FindNeighbours findNeighbours) {
+    super(MessageType.KAD_FIND_NODE, null);
+    this.findNeighbours = findNeighbours;
+  }
+
   public FindNodeMessage(Node from, byte[] targetId) {
+    this(from, targetId, System.currentTimeMillis());
+  }
+
+  /**
+   * The timestamp is echoed back in the Neighbours response, a unique value lets the sender match
+   * the response to this request.
+   */
+  public FindNodeMessage(Node from, byte[] targetId, long timestamp) {
     super(MessageType.KAD_FIND_NODE, null);
     Endpoint fromEndpoint = getEndpointFromNode(from);
     this.findNeighbours = Discover.FindNeighbours.newBuilder()
         .setFrom(fromEndpoint)
         .setTargetId(ByteString.copyFrom(targetId))
-        .setTimestamp(System.currentTimeMillis())
+        .setTimestamp(timestamp)
         .build();
     this.data = this.findNeighbours.toByteArray();
   }
@@ -39,7 +54,19 @@ public class FindNodeMessage extends KadMessage {
 
   @Override
   public Node getFrom() {
-    return NetUtil.getNode(findNeighbours.getFrom());
+    return (Node) from().clone();
+  }
+
+  private Node from() {
+    if (from == null) {
+      from = NetUtil.getNode(findNeighbours.getFrom());
+    }
+    return from;
+  }
+
+  @Override
+  protected byte[] encode() {
+    return findNeighbours.toByteArray();
   }
 
   @Override
@@ -49,7 +76,7 @@ public class FindNodeMessage extends KadMessage {
 
   @Override
   public boolean valid() {
-    return NetUtil.validNode(getFrom())
-        && getTargetId().length == Constant.NODE_ID_LEN;
+    return findNeighbours.getTargetId().size() == Constant.NODE_ID_LEN
+        && NetUtil.validNode(from());
   }
 }
@@ -3,6 +3,7 @@ package org.tron.p2p.discover.message.kad;
 import com.google.protobuf.ByteString;
 import org.apache.commons.lang3.StringUtils;
 import org.tron.p2p.discover.Node;
+import org.tron.p2p.discover.NodeRecord;
 import org.tron.p2p.discover.message.Message;
 import org.tron.p2p.discover.message.MessageType;
 import org.tron.p2p.protos.Discover.Endpoint;
@@ -30,6 +31,11 @@ public abstract class KadMessage extends Message {
     if (StringUtils.isNotEmpty(node.getHostV6())) {
       builder.setAddressIpv6(ByteString.copyFrom(ByteArray.fromString(node.getHostV6())));
     }
+    // only verified records are passed on
+    NodeRecord record = node.getVerifiedRecord();
+    if (record != null) {
+      builder.setRecord(record.toProto());
+    }
     return builder.build();
   }
 }
@@ -13,35 +13,75 @@ import org.tron.p2p.utils.NetUtil;
 
 public class NeighborsMessage extends KadMessage {
 
+  // stays below the 2048 bytes a receiver accepts
+  private static final int MAX_PACKET_SIZE = 1900;
+  // tag and length of an embedded message
+  private static final int ENDPOINT_OVERHEAD = 3;
+
   private Discover.Neighbours neighbours;
 
+  // parsed once, callers get copies since handlers keep and update the nodes they are given
+  private Node from;
+  private List<Node> nodes;
+
   public NeighborsMessage(byte[] data) throws Exception {
     super(MessageType.KAD_NEIGHBORS, data);
     this.neighbours = Discover.Neighbours.parseFrom(data);
   }
 
+  public NeighborsMessage(Discover.Neighbours neighbours) {
+    super(MessageType.KAD_NEIGHBORS, null);
+    this.neighbours = neighbours;
+  }
+
   public NeighborsMessage(Node from, List<Node> neighbours, long sequence) {
     super(MessageType.KAD_NEIGHBORS, null);
     Builder builder = Neighbours.newBuilder()
         .setTimestamp(sequence);
 
-    neighbours.forEach(neighbour -> {
-      Endpoint endpoint = getEndpointFromNode(neighbour);
-      builder.addNeighbours(endpoint);
-    });
-
     Endpoint fromEndpoint = getEndpointFromNode(from);
-
     builder.setFrom(fromEndpoint);
 
+    // every neighbour gets its endpoint, records are only added while they fit in the packet
+    List<Endpoint> endpoints = new ArrayList<>(neighbours.size());
+    int size = fromEndpoint.getSerializedSize() + ENDPOINT_OVERHEAD;
+    for (Node neighbour : neighbours) {
+      Endpoint endpoint = getEndpointFromNode(neighbour);
+      endpoints.add(endpoint);
+      size += endpoint.getSerializedSize() - recordSize(endpoint) + ENDPOINT_OVERHEAD;
+    }
+    for (Endpoint endpoint : endpoints) {
+      int recordSize = recordSize(endpoint);
+      if (size + recordSize <= MAX_PACKET_SIZE) {
+        size += recordSize;
+      } else {
+        endpoint = endpoint.toBuilder().clearRecord().build();
+      }
+      builder.addNeighbours(endpoint);
+    }
+
     this.neighbours = builder.build();
 
     this.data = this.neighbours.toByteArray();
   }
 
+  private static int recordSize(Endpoint endpoint) {
+    return endpoint.hasRecord() ? endpoint.getRecord().getSerializedSize() + ENDPOINT_OVERHEAD
+        : 0;
+  }
+
   public List<Node> getNodes() {
-    List<Node> nodes = new ArrayList<>();
-    neighbours.getNeighboursList().forEach(n -> nodes.add(NetUtil.getNode(n)));
+    List<Node> result = new ArrayList<>(nodes().size());
+    nodes().forEach(n -> result.add((Node) n.clone()));
+    return result;
+  }
+
+  private List<Node> nodes() {
+    if (nodes == null) {
+      List<Node> list = new ArrayList<>(neighbours.getNeighboursCount());
+      neighbours.getNeighboursList().forEach(n -> list.add(NetUtil.getNode(n)));
+      nodes = list;
+    }
     return nodes;
   }
 
@@ -52,7 +92,19 @@ public class NeighborsMessage extends KadMessage {
 
   @Override
   public Node getFrom() {
-    return NetUtil.getNode(neighbours.getFrom());
+    return (Node) from().clone();
+  }
+
+  private Node from() {
+    if (from == null) {
+      from = NetUtil.getNode(neighbours.getFrom());
+    }
+    return from;
+  }
+
+  @Override
+  protected byte[] encode() {
+    return neighbours.toByteArray();
   }
 
   @Override
@@ -62,18 +114,17 @@ public class NeighborsMessage extends KadMessage {
 
   @Override
   public boolean valid() {
-    if (!NetUtil.validNode(getFrom())) {
+    // check the count before building any node
+    if (neighbours.getNeighboursCount() > KademliaOptions.BUCKET_SIZE) {
       return false;
     }
-    if (getNodes().size() > 0) {
-      if (getNodes().size() > KademliaOptions.BUCKET_SIZE) {
+    if (!NetUtil.validNode(from())) {
+      return false;
+    }
+    for (Node node : nodes()) {
+      if (!NetUtil.validNode(node)) {
         return false;
       }
-      for (Node node : getNodes()) {
-        if (!NetUtil.validNode(node)) {
-          return false;
-        }
-      }
     }
     return true;
   }
@@ -11,11 +11,18 @@ public class PingMessage extends KadMessage {
 
   private Discover.PingMessage pingMessage;
 
+  private Node from;
+
   public PingMessage(byte[] data) throws Exception {
     super(MessageType.KAD_PING, data);
     this.pingMessage = Discover.PingMessage.parseFrom(data);
   }
 
+  public PingMessage(Discover.PingMessage pingMessage) {
+    super(MessageType.KAD_PING, null);
+    this.pingMessage = pingMessage;
+  }
+
   public PingMessage(Node from, Node to) {
     super(MessageType.KAD_PING, null);
     Endpoint fromEndpoint = getEndpointFromNode(from);
@@ -44,7 +51,19 @@ public class PingMessage extends KadMessage {
 
   @Override
   public Node getFrom() {
-    return NetUtil.getNode(pingMessage.getFrom());
+    return (Node) from().clone();
+  }
+
+  private Node from() {
+    if (from == null) {
+      from = NetUtil.getNode(pingMessage.getFrom());
+    }
+    return from;
+  }
+
+  @Override
+  protected byte[] encode() {
+    return pingMessage.toByteArray();
   }
 
   @Override
@@ -54,6 +73,6 @@ public class PingMessage extends KadMessage {
 
   @Override
   public boolean valid() {
-    return NetUtil.validNode(getFrom());
+    return NetUtil.validNode(from());
   }
 }
@@ -11,11 +11,18 @@ public class PongMessage extends KadMessage {
 
   private Discover.PongMessage pongMessage;
 
+  private Node from;
+
   public PongMessage(byte[] data) throws Exception {
     super(MessageType.KAD_PONG, data);
     this.pongMessage = Discover.PongMessage.parseFrom(data);
   }
 
+  public PongMessage(Discover.PongMessage pongMessage) {
+    super(MessageType.KAD_PONG, null);
+    this.pongMessage = pongMessage;
+  }
+
   public PongMessage(Node from) {
     super(MessageType.KAD_PONG, null);
     Endpoint toEndpoint = getEndpointFromNode(from);
@@ -38,7 +45,19 @@ public class PongMessage extends KadMessage {
 
   @Override
   public Node getFrom() {
-    return NetUtil.getNode(pongMessage.getFrom());
+    return (Node) from().clone();
+  }
+
+  private Node from() {
+    if (from == null) {
+      from = NetUtil.getNode(pongMessage.getFrom());
+    }
+    return from;
+  }
+
+  @Override
+  protected byte[] encode() {
+    return pongMessage.toByteArray();
   }
 
   @Override
@@ -48,6 +67,6 @@ public class PongMessage extends KadMessage {
 
   @Override
   public boolean valid() {
-    return NetUtil.validNode(getFrom());
+    return NetUtil.validNode(from());
   }
 }
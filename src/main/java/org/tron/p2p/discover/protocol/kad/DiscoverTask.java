@@ -1,87 +1,86 @@
 package org.tron.p2p.discover.protocol.kad;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import io.netty.util.Timeout;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.concurrent.BasicThreadFactory;
-import org.tron.p2p.discover.Node;
 import org.tron.p2p.discover.protocol.kad.table.KademliaOptions;
 import org.tron.p2p.utils.NetUtil;
 
 @Slf4j(topic = "net")
 public class DiscoverTask {
 
-  private ScheduledExecutorService discoverer = Executors.newSingleThreadScheduledExecutor(
-      new BasicThreadFactory.Builder().namingPattern("discoverTask").build());
-
   private KadService kadService;
 
+  private volatile Timeout discoverer;
+  private volatile boolean closed = false;
+
+  private final Set<Lookup> lookups = ConcurrentHashMap.newKeySet();
+
   private int loopNum = 0;
-  private byte[] nodeId;
 
   public DiscoverTask(KadService kadService) {
     this.kadService = kadService;
   }
 
   public void init() {
-    discoverer.scheduleWithFixedDelay(() -> {
-      try {
-        loopNum++;
-        if (loopNum % KademliaOptions.MAX_LOOP_NUM == 0) {
-          loopNum = 0;
-          nodeId = kadService.getPublicHomeNode().getId();
-        } else {
-          nodeId = NetUtil.getNodeId();
-        }
-        discover(nodeId, 0, new ArrayList<>());
-      } catch (Exception e) {
-        log.error("DiscoverTask fails to be executed", e);
-      }
-    }, 1, KademliaOptions.DISCOVER_CYCLE, TimeUnit.MILLISECONDS);
+    schedule(1);
     log.debug("DiscoverTask started");
   }
 
-  private void discover(byte[] nodeId, int round, List<Node> prevTriedNodes) {
-
-    List<Node> closest = kadService.getTable().getClosestNodes(nodeId);
-    List<Node> tried = new ArrayList<>();
-    for (Node n : closest) {
-      if (!tried.contains(n) && !prevTriedNodes.contains(n)) {
+  // rounds run on the kad timing wheel, each one arms the next
+  private void schedule(long delay) {
+    if (closed) {
+      return;
+    }
+    try {
+      discoverer = kadService.getTimer().newTimeout(t -> {
         try {
-          kadService.getNodeHandler(n).sendFindNode(nodeId);
-          tried.add(n);
+          discover();
         } catch (Exception e) {
-          log.error("Unexpected Exception occurred while sending FindNodeMessage", e);
+          log.error("DiscoverTask fails to be executed", e);
         }
-      }
-
-      if (tried.size() == KademliaOptions.ALPHA) {
-        break;
-      }
-    }
-
-    try {
-      Thread.sleep(KademliaOptions.WAIT_TIME);
-    } catch (InterruptedException e) {
-      log.warn("Discover task interrupted");
-      Thread.currentThread().interrupt();
+        schedule(KademliaOptions.DISCOVER_CYCLE);
+      }, delay, TimeUnit.MILLISECONDS);
+    } catch (IllegalStateException e) {
+      log.debug("DiscoverTask stopped, timer is closed");
     }
+  }
 
-    if (tried.isEmpty()) {
-      return;
+  // tops up the running lookups, lookups run on network threads and do not block this one
+  private void discover() {
+    loopNum++;
+    boolean lookupSelf = false;
+    if (loopNum % KademliaOptions.MAX_LOOP_NUM == 0) {
+      loopNum = 0;
+      lookupSelf = true;
     }
-
-    if (++round == KademliaOptions.MAX_STEPS) {
-      return;
+    int count = KademliaOptions.MAX_CONCURRENT_LOOKUPS - lookups.size();
+    for (int i = 0; i < count; i++) {
+      byte[] target = NetUtil.getNodeId();
+      if (lookupSelf) {
+        lookupSelf = false;
+        target = kadService.getPublicHomeNode().getId();
+      }
+      Lookup lookup = new Lookup(kadService, target);
+      lookups.add(lookup);
+      lookup.getFuture().whenComplete((v, e) -> lookups.remove(lookup));
+      lookup.start();
+      if (closed) {
+        // closed while starting, close() may have missed this one
+        lookup.cancel();
+      }
     }
-    tried.addAll(prevTriedNodes);
-    discover(nodeId, round, tried);
   }
 
   public void close() {
-    discoverer.shutdownNow();
+    closed = true;
+    if (discoverer != null) {
+      discoverer.cancel();
+    }
+    // stop the lookups in flight so that none of their requests or deadlines outlive the task
+    lookups.forEach(Lookup::cancel);
+    lookups.clear();
   }
 }
@@ -0,0 +1,76 @@
+package org.tron.p2p.discover.protocol.kad;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram over fixed bucket upper bounds. Percentiles are reported as the upper bound
+ * of the bucket they fall in, values above the last bound report the maximum seen.
+ */
+public class Histogram {
+
+  private final long[] bounds;
+  private final AtomicLongArray counts;
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  public Histogram(long... bounds) {
+    this.bounds = bounds.clone();
+    this.counts = new AtomicLongArray(bounds.length + 1);
+  }
+
+  /**
+   * Bounds growing by a factor of two from {@code first}, e.g. 1, 2, 4 ... for {@code n} bounds.
+   */
+  public static Histogram exponential(long first, int n) {
+    long[] bounds = new long[n];
+    for (int i = 0; i < n; i++) {
+      bounds[i] = first << i;
+    }
+    return new Histogram(bounds);
+  }
+
+  public void record(long value) {
+    int i = 0;
+    while (i < bounds.length && value > bounds[i]) {
+      i++;
+    }
+    counts.incrementAndGet(i);
+    count.incrementAndGet();
+    sum.addAndGet(value);
+    max.accumulateAndGet(value, Math::max);
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getMean() {
+    long n = count.get();
+    return n == 0 ? 0 : sum.get() / n;
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * @param p percentile between 0 and 100
+   */
+  public long getPercentile(double p) {
+    long n = count.get();
+    if (n == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(n * p / 100));
+    long seen = 0;
+    for (int i = 0; i < bounds.length; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return bounds[i];
+      }
+    }
+    return max.get();
+  }
+}
@@ -0,0 +1,85 @@
+package org.tron.p2p.discover.protocol.kad;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.tron.p2p.stats.KadStats;
+
+/**
+ * Counters and histograms of the discovery protocol. Gauges such as bucket fill and handler
+ * states are read from the service when a snapshot is taken.
+ */
+public class KadMetrics {
+
+  private final AtomicLong tableAdds = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong pingsSent = new AtomicLong();
+  private final AtomicLong pongsReceived = new AtomicLong();
+  private final AtomicLong pingTimeouts = new AtomicLong();
+  private final AtomicLong lookupQueries = new AtomicLong();
+
+  // millis, from 1 ms up to about 65 s
+  private final Histogram pingRtt = Histogram.exponential(1, 17);
+  private final Histogram lookupLatency = Histogram.exponential(1, 17);
+  private final Histogram lookupHops = Histogram.exponential(1, 6);
+
+  void onTableAdd() {
+    tableAdds.incrementAndGet();
+  }
+
+  void onEviction() {
+    evictions.incrementAndGet();
+  }
+
+  void onPingSent() {
+    pingsSent.incrementAndGet();
+  }
+
+  void onPong(long rtt) {
+    pongsReceived.incrementAndGet();
+    pingRtt.record(rtt);
+  }
+
+  void onPingTimeout() {
+    pingTimeouts.incrementAndGet();
+  }
+
+  void onLookup(long latency, int queries, int hops) {
+    lookupLatency.record(latency);
+    lookupQueries.addAndGet(queries);
+    lookupHops.record(hops);
+  }
+
+  public KadStats snapshot(KadService kadService) {
+    KadStats stats = new KadStats();
+    stats.setTableSize(kadService.getTable().getNodesCount());
+    stats.setBucketFill(kadService.getTable().getBucketFill());
+    stats.setTableAdds(tableAdds.get());
+    stats.setEvictions(evictions.get());
+
+    Map<String, Integer> states = new TreeMap<>();
+    for (NodeHandler handler : kadService.getNodeHandlers()) {
+      NodeHandler.State state = handler.getState();
+      states.merge(state == null ? "NONE" : state.name(), 1, Integer::sum);
+    }
+    stats.setHandlerStates(states);
+
+    long pongs = pongsReceived.get();
+    long timeouts = pingTimeouts.get();
+    stats.setPingsSent(pingsSent.get());
+    stats.setPongsReceived(pongs);
+    stats.setPingTimeouts(timeouts);
+    stats.setPingSuccessRate(pongs + timeouts == 0 ? 0 : (double) pongs / (pongs + timeouts));
+    stats.setPingRttP50(pingRtt.getPercentile(50));
+    stats.setPingRttP99(pingRtt.getPercentile(99));
+
+    stats.setLookups(lookupLatency.getCount());
+    stats.setLookupQueries(lookupQueries.get());
+    stats.setLookupLatencyMean(lookupLatency.getMean());
+    stats.setLookupLatencyP50(lookupLatency.getPercentile(50));
+    stats.setLookupLatencyP99(lookupLatency.getPercentile(99));
+    stats.setLookupHopsMean(lookupHops.getMean());
+    stats.setLookupHopsMax(lookupHops.getMax());
+    return stats;
+  }
+}
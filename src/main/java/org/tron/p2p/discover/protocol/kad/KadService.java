@@ -1,54 +1,89 @@
 package org.tron.p2p.discover.protocol.kad;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
 import java.net.Inet4Address;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.tron.p2p.base.Parameter;
 import org.tron.p2p.discover.DiscoverService;
 import org.tron.p2p.discover.Node;
+import org.tron.p2p.discover.NodeRecord;
+import org.tron.p2p.discover.NodeStore;
 import org.tron.p2p.discover.message.kad.FindNodeMessage;
 import org.tron.p2p.discover.message.kad.KadMessage;
 import org.tron.p2p.discover.message.kad.NeighborsMessage;
 import org.tron.p2p.discover.message.kad.PingMessage;
 import org.tron.p2p.discover.message.kad.PongMessage;
+import org.tron.p2p.discover.protocol.kad.table.KademliaOptions;
 import org.tron.p2p.discover.protocol.kad.table.NodeTable;
 import org.tron.p2p.discover.socket.UdpEvent;
+import org.tron.p2p.protos.Discover.StoredNode;
+import org.tron.p2p.stats.KadStats;
+import org.tron.p2p.utils.NetUtil;
 
 @Slf4j(topic = "net")
 public class KadService implements DiscoverService {
 
-  private static final int MAX_NODES = 2000;
-  private static final int NODES_TRIM_THRESHOLD = 3000;
+  // handlers kept for nodes outside the table, table nodes are not counted
+  static final int MAX_NODES = 3000;
   @Getter
   @Setter
   private static long pingTimeout = 15_000;
+  // find node requests refused to endpoints that have not proven reachability
+  @Getter
+  private static final AtomicLong deniedNeighbours = new AtomicLong();
 
   private final List<Node> bootNodes = new ArrayList<>();
 
   private volatile boolean inited = false;
 
-  private final Map<InetSocketAddress, NodeHandler> nodeHandlerMap = new ConcurrentHashMap<>();
+  // handlers of nodes outside the table, bounded by least recent use; each segment evicts on its
+  // own so no lock spans the whole map
+  private final Cache<InetSocketAddress, NodeHandler> nodeHandlerMap = CacheBuilder.newBuilder()
+      .maximumSize(MAX_NODES)
+      .removalListener((RemovalListener<InetSocketAddress, NodeHandler>) notification -> {
+        if (notification.getCause() == RemovalCause.SIZE) {
+          notification.getValue().evict();
+        }
+      })
+      .build();
+  // handlers of table nodes, bounded by the table, so a flood of new sources can not push the
+  // quiet table members out
+  private final Map<InetSocketAddress, NodeHandler> tableHandlers = new ConcurrentHashMap<>();
+
+  private final AtomicLong requestId = new AtomicLong();
 
   private Consumer<UdpEvent> messageSender;
 
   private NodeTable table;
   private Node homeNode;
 
-  private ScheduledExecutorService pongTimer;
+  // timing wheel shared by request deadlines and discovery rounds
+  private HashedWheelTimer timer;
+  private PendingRequests pendingRequests;
   private DiscoverTask discoverTask;
 
+  @Getter
+  private final KadMetrics metrics = new KadMetrics();
+
   public void init() {
     for (InetSocketAddress address : Parameter.p2pConfig.getSeedNodes()) {
       bootNodes.add(new Node(address));
@@ -56,10 +91,22 @@ public class KadService implements DiscoverService {
     for (InetSocketAddress address : Parameter.p2pConfig.getActiveNodes()) {
       bootNodes.add(new Node(address));
     }
-    this.pongTimer = Executors.newSingleThreadScheduledExecutor(
-        new BasicThreadFactory.Builder().namingPattern("pongTimer").build());
+    for (StoredNode storedNode : NodeStore.getStoredNodes()) {
+      Node node = NetUtil.getNode(storedNode.getEndpoint());
+      node.setP2pVersion(storedNode.getNetworkId());
+      bootNodes.add(node);
+    }
+    this.timer = new HashedWheelTimer(
+        new BasicThreadFactory.Builder().namingPattern("kadTimer").build(),
+        KademliaOptions.TIMER_TICK, TimeUnit.MILLISECONDS, KademliaOptions.TIMER_WHEEL_SIZE);
+    this.pendingRequests = new PendingRequests(timer);
     this.homeNode = new Node(Parameter.p2pConfig.getNodeID(), Parameter.p2pConfig.getIp(),
         Parameter.p2pConfig.getIpv6(), Parameter.p2pConfig.getPort());
+    if (Parameter.p2pConfig.getNodeKey() != null) {
+      // the sequence starts from the clock so that records signed after a restart are newer
+      homeNode.updateRecord(NodeRecord.sign(Parameter.p2pConfig.getNodeKey(),
+          System.currentTimeMillis(), Parameter.p2pConfig.getCapabilities()));
+    }
     this.table = new NodeTable(homeNode);
 
     if (Parameter.p2pConfig.isDiscoverEnable()) {
@@ -70,15 +117,17 @@ public class KadService implements DiscoverService {
 
   public void close() {
     try {
-      if (pongTimer != null) {
-        pongTimer.shutdownNow();
-      }
-
       if (discoverTask != null) {
         discoverTask.close();
       }
+      if (pendingRequests != null) {
+        pendingRequests.clear();
+      }
+      if (timer != null) {
+        timer.stop();
+      }
     } catch (Exception e) {
-      log.error("Close nodeManagerTasksTimer or pongTimer failed", e);
+      log.error("Close discoverTask or timer failed", e);
       throw e;
     }
   }
@@ -96,19 +145,30 @@ public class KadService implements DiscoverService {
 
   public List<Node> getAllNodes() {
     List<Node> nodeList = new ArrayList<>();
-    for (NodeHandler nodeHandler : nodeHandlerMap.values()) {
+    for (NodeHandler nodeHandler : getNodeHandlers()) {
       nodeList.add(nodeHandler.getNode());
     }
     return nodeList;
   }
 
+  public Collection<NodeHandler> getNodeHandlers() {
+    List<NodeHandler> handlers = new ArrayList<>(tableHandlers.values());
+    handlers.addAll(nodeHandlerMap.asMap().values());
+    return handlers;
+  }
+
+  @Override
+  public KadStats getKadStats() {
+    return metrics.snapshot(this);
+  }
+
   @Override
   public void setMessageSender(Consumer<UdpEvent> messageSender) {
     this.messageSender = messageSender;
   }
 
   @Override
-  public void channelActivated() {
+  public synchronized void channelActivated() {
     if (!inited) {
       inited = true;
 
@@ -132,6 +192,7 @@ public class KadService implements DiscoverService {
       n = new Node(m.getFrom().getId(), m.getFrom().getHostV4(), sender.getHostString(),
           sender.getPort(), m.getFrom().getPort());
     }
+    n.updateRecord(m.getFrom());
 
     NodeHandler nodeHandler = getNodeHandler(n);
     nodeHandler.getNode().setId(n.getId());
@@ -160,25 +221,103 @@ public class KadService implements DiscoverService {
     InetSocketAddress inet4 = n.getInetSocketAddressV4();
     InetSocketAddress inet6 = n.getInetSocketAddressV6();
     if (inet4 != null) {
-      ret = nodeHandlerMap.get(inet4);
+      ret = findNodeHandler(inet4);
     }
     if (ret == null && inet6 != null) {
-      ret = nodeHandlerMap.get(inet6);
+      ret = findNodeHandler(inet6);
     }
 
     if (ret == null) {
-      trimTable();
-      ret = new NodeHandler(n, this);
-      if (n.getPreferInetSocketAddress() != null) {
-        nodeHandlerMap.put(n.getPreferInetSocketAddress(), ret);
+      InetSocketAddress address = n.getPreferInetSocketAddress();
+      // only ping if IP stack is compatible
+      if (address == null) {
+        return new NodeHandler(n, this);
+      }
+      NodeHandler[] created = new NodeHandler[1];
+      ret = nodeHandlerMap.asMap().computeIfAbsent(address,
+          k -> created[0] = new NodeHandler(n, this));
+      if (ret == created[0]) {
+        NodeHandler pinned = tableHandlers.get(address);
+        if (pinned != null) {
+          // the handler was pinned while this one was created
+          nodeHandlerMap.asMap().remove(address, ret);
+          return pinned;
+        }
+        // only the handler that made it into the map pings, a losing one would cancel its pong
+        ret.changeState(NodeHandler.State.DISCOVERED);
       }
     } else {
       ret.getNode().updateHostV4(n.getHostV4());
       ret.getNode().updateHostV6(n.getHostV6());
+      ret.getNode().updateRecord(n);
     }
     return ret;
   }
 
+  private NodeHandler findNodeHandler(InetSocketAddress address) {
+    NodeHandler handler = tableHandlers.get(address);
+    return handler != null ? handler : nodeHandlerMap.getIfPresent(address);
+  }
+
+  /**
+   * Moves the handler of a node that entered the table out of the evictable handlers.
+   */
+  void pin(NodeHandler handler) {
+    for (InetSocketAddress address : addresses(handler.getNode())) {
+      if (nodeHandlerMap.getIfPresent(address) == handler) {
+        tableHandlers.put(address, handler);
+        nodeHandlerMap.asMap().remove(address, handler);
+      }
+    }
+  }
+
+  /**
+   * Returns the handler of a node that left the table to the evictable handlers.
+   */
+  void unpin(NodeHandler handler) {
+    for (InetSocketAddress address : addresses(handler.getNode())) {
+      if (tableHandlers.get(address) == handler) {
+        nodeHandlerMap.asMap().putIfAbsent(address, handler);
+        tableHandlers.remove(address, handler);
+      }
+    }
+  }
+
+  private static List<InetSocketAddress> addresses(Node n) {
+    List<InetSocketAddress> addresses = new ArrayList<>(2);
+    if (n.getInetSocketAddressV4() != null) {
+      addresses.add(n.getInetSocketAddressV4());
+    }
+    if (n.getInetSocketAddressV6() != null) {
+      addresses.add(n.getInetSocketAddressV6());
+    }
+    return addresses;
+  }
+
+  /**
+   * Fills in the home node addresses found after start, the table keys on the node id so it is
+   * not affected.
+   */
+  @Override
+  public void updateHomeNode() {
+    String ip = Parameter.p2pConfig.getIp();
+    String ipv6 = Parameter.p2pConfig.getIpv6();
+    homeNode.setHosts(StringUtils.isEmpty(ip) ? homeNode.getHostV4() : ip,
+        StringUtils.isEmpty(ipv6) ? homeNode.getHostV6() : ipv6);
+  }
+
+  @Override
+  public synchronized void updateCapabilities(Map<String, byte[]> capabilities) {
+    String nodeKey = Parameter.p2pConfig.getNodeKey();
+    if (nodeKey == null) {
+      log.warn("No node key, capabilities are not announced");
+      return;
+    }
+    NodeRecord old = homeNode.getRecord();
+    long seq = Math.max(old == null ? 0 : old.getSeq() + 1, System.currentTimeMillis());
+    homeNode.updateRecord(NodeRecord.sign(nodeKey, seq, capabilities));
+  }
+
   public NodeTable getTable() {
     return table;
   }
@@ -193,27 +332,19 @@ public class KadService implements DiscoverService {
     }
   }
 
-  public ScheduledExecutorService getPongTimer() {
-    return pongTimer;
+  /**
+   * Returns a unique request id. Peers treat it as a timestamp, so it never falls behind the
+   * clock.
+   */
+  public long nextRequestId() {
+    return requestId.updateAndGet(prev -> Math.max(prev + 1, System.currentTimeMillis()));
   }
 
-  private void trimTable() {
-    if (nodeHandlerMap.size() > NODES_TRIM_THRESHOLD) {
-      nodeHandlerMap.values().forEach(handler -> {
-        if (!handler.getNode().isConnectible(Parameter.p2pConfig.getNetworkId())) {
-          nodeHandlerMap.values().remove(handler);
-        }
-      });
-    }
-    if (nodeHandlerMap.size() > NODES_TRIM_THRESHOLD) {
-      List<NodeHandler> sorted = new ArrayList<>(nodeHandlerMap.values());
-      sorted.sort(Comparator.comparingLong(o -> o.getNode().getUpdateTime()));
-      for (NodeHandler handler : sorted) {
-        nodeHandlerMap.values().remove(handler);
-        if (nodeHandlerMap.size() <= MAX_NODES) {
-          break;
-        }
-      }
-    }
+  public PendingRequests getPendingRequests() {
+    return pendingRequests;
+  }
+
+  public Timer getTimer() {
+    return timer;
   }
 }
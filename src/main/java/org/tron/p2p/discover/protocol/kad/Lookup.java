@@ -0,0 +1,173 @@
+package org.tron.p2p.discover.protocol.kad;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.p2p.discover.Node;
+import org.tron.p2p.discover.NodeId;
+import org.tron.p2p.discover.message.MessageType;
+import org.tron.p2p.discover.message.kad.NeighborsMessage;
+import org.tron.p2p.discover.protocol.kad.table.KademliaOptions;
+
+/**
+ * One iterative lookup toward a target id. Up to {@link KademliaOptions#ALPHA} FindNode requests
+ * are in flight at a time, and every response or timeout immediately frees a slot for the next
+ * closest unqueried node. The lookup stops sending once the closest
+ * {@link KademliaOptions#BUCKET_SIZE} nodes have all been queried, or once
+ * {@link KademliaOptions#ALPHA} requests in a row brought no closer node.
+ */
+@Slf4j(topic = "net")
+public class Lookup {
+
+  private static final int MAX_QUERIES = KademliaOptions.MAX_STEPS * KademliaOptions.ALPHA;
+
+  private final KadService kadService;
+  private final byte[] target;
+  private final NodeId targetId;
+
+  // every node seen so far, closest to the target first
+  private final TreeSet<Node> closest;
+  private final Set<NodeId> queried = new HashSet<>();
+  // hops from our table to each node seen, nodes from the table are one hop away
+  private final Map<NodeId, Integer> hops = new HashMap<>();
+  // hops of the queried node by request id, for the find node requests in flight
+  private final Map<Long, Integer> pending = new HashMap<>();
+  // address each request in flight was sent to
+  private final Map<Long, InetSocketAddress> peers = new HashMap<>();
+  private int queries;
+  private int stalls;
+  private int maxHops;
+  private long startTime;
+
+  private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+  public Lookup(KadService kadService, byte[] target) {
+    this.kadService = kadService;
+    this.target = target;
+    this.targetId = new NodeId(target);
+    this.closest = new TreeSet<>((o1, o2) -> targetId.compareDistance(o1.getNodeId(),
+        o2.getNodeId()));
+  }
+
+  public byte[] getTarget() {
+    return target;
+  }
+
+  /**
+   * Completes once no request of this lookup is outstanding any more.
+   */
+  public CompletableFuture<Void> getFuture() {
+    return future;
+  }
+
+  public synchronized void start() {
+    if (future.isDone()) {
+      return;
+    }
+    startTime = System.currentTimeMillis();
+    addNodes(kadService.getTable().getClosestNodes(target), 1);
+    advance();
+  }
+
+  /**
+   * Stops the lookup, its requests in flight are dropped and their deadlines cancelled.
+   */
+  public synchronized void cancel() {
+    for (Map.Entry<Long, InetSocketAddress> entry : peers.entrySet()) {
+      kadService.getPendingRequests().cancel(entry.getValue(), MessageType.KAD_NEIGHBORS,
+          entry.getKey());
+    }
+    pending.clear();
+    peers.clear();
+    future.complete(null);
+  }
+
+  private synchronized void onNeighbours(long requestId, NeighborsMessage msg) {
+    Integer hop = pending.remove(requestId);
+    if (hop == null) {
+      return;
+    }
+    peers.remove(requestId);
+    maxHops = Math.max(maxHops, hop);
+    if (addNodes(msg.getNodes(), hop + 1)) {
+      stalls = 0;
+    } else {
+      stalls++;
+    }
+    advance();
+  }
+
+  private synchronized void onTimeout(long requestId) {
+    if (pending.remove(requestId) != null) {
+      peers.remove(requestId);
+      stalls++;
+      advance();
+    }
+  }
+
+  /**
+   * Adds newly seen nodes, returns true if any of them made it into the closest set.
+   */
+  private boolean addNodes(List<Node> nodes, int hop) {
+    NodeId homeId = kadService.getPublicHomeNode().getNodeId();
+    boolean improved = false;
+    for (Node node : nodes) {
+      if (node.getNodeId() == null || node.getNodeId().equals(homeId)
+          || node.getPreferInetSocketAddress() == null) {
+        continue;
+      }
+      if (closest.add(node)) {
+        hops.put(node.getNodeId(), hop);
+        if (closest.headSet(node).size() < KademliaOptions.BUCKET_SIZE) {
+          improved = true;
+        }
+      }
+    }
+    return improved;
+  }
+
+  private void advance() {
+    if (future.isDone()) {
+      return;
+    }
+    if (stalls < KademliaOptions.ALPHA) {
+      int rank = 0;
+      for (Node node : closest) {
+        if (pending.size() >= KademliaOptions.ALPHA || queries >= MAX_QUERIES
+            || rank++ >= KademliaOptions.BUCKET_SIZE) {
+          break;
+        }
+        if (queried.add(node.getNodeId())) {
+          query(node);
+        }
+      }
+    }
+    if (pending.isEmpty()) {
+      kadService.getMetrics().onLookup(System.currentTimeMillis() - startTime, queries, maxHops);
+      future.complete(null);
+    }
+  }
+
+  private void query(Node node) {
+    long requestId = kadService.nextRequestId();
+    try {
+      NodeHandler handler = kadService.getNodeHandler(node);
+      InetSocketAddress peer = handler.getNode().getPreferInetSocketAddress();
+      kadService.getPendingRequests().add(peer, MessageType.KAD_NEIGHBORS, requestId,
+          KademliaOptions.REQUEST_TIMEOUT, m -> onNeighbours(requestId, (NeighborsMessage) m),
+          () -> onTimeout(requestId));
+      pending.put(requestId, hops.get(node.getNodeId()));
+      peers.put(requestId, peer);
+      queries++;
+      handler.sendFindNode(target, requestId);
+    } catch (Exception e) {
+      log.error("Unexpected Exception occurred while sending FindNodeMessage", e);
+    }
+  }
+}
@@ -1,17 +1,20 @@
 package org.tron.p2p.discover.protocol.kad;
 
+import java.net.Inet4Address;
 import java.net.InetSocketAddress;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import lombok.extern.slf4j.Slf4j;
 import org.tron.p2p.base.Parameter;
 import org.tron.p2p.discover.Node;
+import org.tron.p2p.discover.NodeManager;
 import org.tron.p2p.discover.message.Message;
+import org.tron.p2p.discover.message.MessageType;
 import org.tron.p2p.discover.message.kad.FindNodeMessage;
 import org.tron.p2p.discover.message.kad.NeighborsMessage;
 import org.tron.p2p.discover.message.kad.PingMessage;
 import org.tron.p2p.discover.message.kad.PongMessage;
+import org.tron.p2p.discover.protocol.kad.table.KademliaOptions;
 import org.tron.p2p.discover.socket.UdpEvent;
 
 @Slf4j(topic = "net")
@@ -22,16 +25,15 @@ public class NodeHandler {
   private KadService kadService;
   private NodeHandler replaceCandidate;
   private AtomicInteger pingTrials = new AtomicInteger(3);
-  private volatile boolean waitForPong = false;
-  private volatile boolean waitForNeighbors = false;
+  // last time the node answered our ping, which proves it owns its address
+  private volatile long lastPongTime;
+  private volatile long lastPingTime;
+  // set once the handler was evicted from the handler map
+  private volatile boolean evicted;
 
   public NodeHandler(Node node, KadService kadService) {
     this.node = node;
     this.kadService = kadService;
-    // send ping only if IP stack is compatible
-    if (node.getPreferInetSocketAddress() != null) {
-      changeState(State.DISCOVERED);
-    }
   }
 
   public Node getNode() {
@@ -47,29 +49,54 @@ public class NodeHandler {
   }
 
   private void challengeWith(NodeHandler replaceCandidate) {
-    this.replaceCandidate = replaceCandidate;
-    changeState(State.EVICTCANDIDATE);
+    synchronized (this) {
+      if (state == State.EVICTCANDIDATE) {
+        return;
+      }
+      this.replaceCandidate = replaceCandidate;
+      // entering EVICTCANDIDATE only sends a ping, no other handler is involved
+      transition(State.EVICTCANDIDATE);
+    }
   }
 
-  // Manages state transfers
+  /**
+   * Manages state transfers. Transitions of one handler are serialized, and a transition that
+   * involves another handler runs after the lock of this one is released, so two handlers never
+   * wait for each other.
+   */
   public void changeState(State newState) {
+    Runnable next;
+    synchronized (this) {
+      next = transition(newState);
+    }
+    run(next);
+  }
+
+  // must hold the lock of this handler, returns the follow up on another handler if any
+  private Runnable transition(State newState) {
+    if (evicted) {
+      return null;
+    }
+    Runnable next = null;
     State oldState = state;
     if (newState == State.DISCOVERED) {
       sendPing();
     }
 
     if (newState == State.ALIVE) {
+      // the peer is bonded, check its record before the table passes it on
+      node.getRecord();
       Node evictCandidate = kadService.getTable().addNode(this.node);
       if (evictCandidate == null) {
         newState = State.ACTIVE;
       } else {
-        NodeHandler evictHandler = kadService.getNodeHandler(evictCandidate);
-        if (evictHandler.state != State.EVICTCANDIDATE) {
-          evictHandler.challengeWith(this);
-        }
+        next = () -> kadService.getNodeHandler(evictCandidate).challengeWith(this);
       }
     }
     if (newState == State.ACTIVE) {
+      if (oldState != State.EVICTCANDIDATE) {
+        kadService.getMetrics().onTableAdd();
+      }
       if (oldState == State.ALIVE) {
         // new node won the challenge
         kadService.getTable().addNode(node);
@@ -78,6 +105,8 @@ public class NodeHandler {
       } else {
         // wrong state transition
       }
+      // a table node is never evicted from the handler map
+      next = () -> kadService.pin(this);
     }
 
     if (newState == State.DEAD) {
@@ -85,8 +114,13 @@ public class NodeHandler {
         // lost the challenge
         // Removing ourselves from the table
         kadService.getTable().dropNode(node);
+        kadService.getMetrics().onEviction();
         // Congratulate the winner
-        replaceCandidate.changeState(State.ACTIVE);
+        NodeHandler winner = replaceCandidate;
+        next = () -> {
+          kadService.unpin(this);
+          winner.changeState(State.ACTIVE);
+        };
       } else if (oldState == State.ALIVE) {
         // ok the old node was better, nothing to do here
       } else {
@@ -99,81 +133,134 @@ public class NodeHandler {
       sendPing();
     }
     state = newState;
+    return next;
+  }
+
+  private static void run(Runnable next) {
+    if (next != null) {
+      next.run();
+    }
+  }
+
+  /**
+   * Called once the handler left the handler map. It stops reacting to pending responses and
+   * timeouts. Table nodes are pinned and not evicted, a node that just made it into the table and
+   * is not pinned yet leaves it again, so no table entry is left without a handler.
+   */
+  void evict() {
+    NodeHandler winner;
+    synchronized (this) {
+      if (evicted) {
+        return;
+      }
+      evicted = true;
+      winner = state == State.EVICTCANDIDATE ? replaceCandidate : null;
+      state = State.DEAD;
+    }
+    if (kadService.getTable().contains(node)) {
+      kadService.getTable().dropNode(node);
+    }
+    if (winner != null) {
+      // the challenged node is gone, the candidate takes its place
+      winner.changeState(State.ACTIVE);
+    }
   }
 
   public void handlePing(PingMessage msg) {
     if (!kadService.getTable().getNode().equals(node)) {
       sendPong();
     }
+    // the destination of a ping is how the peer sees us, only peers that proved their address
+    // can vote for ours
+    InetSocketAddress address = node.getPreferInetSocketAddress();
+    if (address != null && isBonded()) {
+      Node to = msg.getTo();
+      NodeManager.voteExternalAddress(address.getAddress(),
+          address.getAddress() instanceof Inet4Address ? to.getHostV4() : to.getHostV6());
+    }
     node.setP2pVersion(msg.getNetworkId());
-    if (!node.isConnectible(Parameter.p2pConfig.getNetworkId())) {
-      changeState(State.DEAD);
-    } else if (state.equals(State.DEAD)) {
-      changeState(State.DISCOVERED);
+    Runnable next = null;
+    synchronized (this) {
+      if (!node.isConnectible(Parameter.p2pConfig.getNetworkId())) {
+        next = transition(State.DEAD);
+      } else if (state == State.DEAD) {
+        next = transition(State.DISCOVERED);
+      }
     }
+    run(next);
   }
 
   public void handlePong(PongMessage msg) {
-    if (waitForPong) {
-      waitForPong = false;
-      node.setP2pVersion(msg.getNetworkId());
-      if (!node.isConnectible(Parameter.p2pConfig.getNetworkId())) {
-        changeState(State.DEAD);
-      } else {
-        changeState(State.ALIVE);
-      }
+    // pong carries no nonce, at most one ping per peer is outstanding
+    kadService.getPendingRequests().complete(node.getPreferInetSocketAddress(), 0, msg);
+  }
+
+  private void onPong(PongMessage msg) {
+    lastPongTime = System.currentTimeMillis();
+    kadService.getMetrics().onPong(lastPongTime - lastPingTime);
+    node.setP2pVersion(msg.getNetworkId());
+    if (!node.isConnectible(Parameter.p2pConfig.getNetworkId())) {
+      changeState(State.DEAD);
+    } else {
+      changeState(State.ALIVE);
     }
   }
 
   public void handleNeighbours(NeighborsMessage msg, InetSocketAddress sender) {
-    if (!waitForNeighbors) {
+    if (!kadService.getPendingRequests().complete(sender, msg.getTimestamp(), msg)) {
       log.warn("Receive neighbors from {} without send find nodes", sender);
       return;
     }
-    waitForNeighbors = false;
     for (Node n : msg.getNodes()) {
-      if (!kadService.getPublicHomeNode().getHexId().equals(n.getHexId())) {
+      if (!kadService.getPublicHomeNode().getNodeId().equals(n.getNodeId())) {
         kadService.getNodeHandler(n);
       }
     }
   }
 
   public void handleFindNode(FindNodeMessage msg) {
+    // a neighbours reply is much larger than the request, only send it to proven endpoints so
+    // that a spoofed source address can not turn us into an amplifier
+    if (!isBonded()) {
+      KadService.getDeniedNeighbours().incrementAndGet();
+      log.debug("Ignore find node from unbonded {}", node.getPreferInetSocketAddress());
+      return;
+    }
     List<Node> closest = kadService.getTable().getClosestNodes(msg.getTargetId());
     sendNeighbours(closest, msg.getTimestamp());
   }
 
+  public boolean isBonded() {
+    return System.currentTimeMillis() - lastPongTime < KademliaOptions.BOND_EXPIRE;
+  }
+
   public void handleTimedOut() {
-    waitForPong = false;
-    if (pingTrials.getAndDecrement() > 0) {
-      sendPing();
-    } else {
-      if (state == State.DISCOVERED || state == State.EVICTCANDIDATE) {
-        changeState(State.DEAD);
+    if (evicted) {
+      return;
+    }
+    kadService.getMetrics().onPingTimeout();
+    Runnable next = null;
+    synchronized (this) {
+      if (pingTrials.getAndDecrement() > 0) {
+        sendPing();
       } else {
-        // TODO just influence to reputation
+        if (state == State.DISCOVERED || state == State.EVICTCANDIDATE) {
+          next = transition(State.DEAD);
+        } else {
+          // TODO just influence to reputation
+        }
       }
     }
+    run(next);
   }
 
   public void sendPing() {
     PingMessage msg = new PingMessage(kadService.getPublicHomeNode(), getNode());
-    waitForPong = true;
+    lastPingTime = System.currentTimeMillis();
+    kadService.getMetrics().onPingSent();
+    kadService.getPendingRequests().add(node.getPreferInetSocketAddress(), MessageType.KAD_PONG,
+        0, KadService.getPingTimeout(), m -> onPong((PongMessage) m), this::handleTimedOut);
     sendMessage(msg);
-
-    if (kadService.getPongTimer().isShutdown()) {
-      return;
-    }
-    kadService.getPongTimer().schedule(() -> {
-      try {
-        if (waitForPong) {
-          waitForPong = false;
-          handleTimedOut();
-        }
-      } catch (Exception e) {
-        log.error("Unhandled exception in pong timer schedule", e);
-      }
-    }, KadService.getPingTimeout(), TimeUnit.MILLISECONDS);
   }
 
   public void sendPong() {
@@ -181,9 +268,8 @@ public class NodeHandler {
     sendMessage(pong);
   }
 
-  public void sendFindNode(byte[] target) {
-    waitForNeighbors = true;
-    FindNodeMessage msg = new FindNodeMessage(kadService.getPublicHomeNode(), target);
+  public void sendFindNode(byte[] target, long requestId) {
+    FindNodeMessage msg = new FindNodeMessage(kadService.getPublicHomeNode(), target, requestId);
     sendMessage(msg);
   }
 
@@ -0,0 +1,146 @@
+package org.tron.p2p.discover.protocol.kad;
+
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.p2p.discover.message.MessageType;
+import org.tron.p2p.discover.message.kad.KadMessage;
+
+/**
+ * Outstanding discovery requests keyed by peer, expected response type and nonce. A response is
+ * only accepted if it matches a request exactly, and every request has its own deadline that is
+ * cancelled as soon as the response arrives.
+ */
+@Slf4j(topic = "net")
+public class PendingRequests {
+
+  private final Map<Key, Request> requests = new ConcurrentHashMap<>();
+
+  private final Timer timer;
+
+  public PendingRequests(Timer timer) {
+    this.timer = timer;
+  }
+
+  /**
+   * Registers a request, replacing and cancelling any request with the same key.
+   *
+   * @param peer address the request is sent to
+   * @param type message type of the expected response
+   * @param nonce value the response must carry, 0 if the response carries none
+   */
+  public void add(InetSocketAddress peer, MessageType type, long nonce, long timeout,
+      Consumer<KadMessage> onResponse, Runnable onTimeout) {
+    Key key = new Key(peer, type, nonce);
+    Request request = new Request(onResponse, onTimeout);
+    Request old = requests.put(key, request);
+    if (old != null) {
+      old.cancel();
+    }
+    try {
+      request.timeout = timer.newTimeout(t -> {
+        if (requests.remove(key, request)) {
+          try {
+            request.onTimeout.run();
+          } catch (Exception e) {
+            log.error("Unhandled exception in {} timeout of {}", type, peer, e);
+          }
+        }
+      }, timeout, TimeUnit.MILLISECONDS);
+    } catch (IllegalStateException e) {
+      // timer already stopped, the service is closing
+      requests.remove(key, request);
+    }
+  }
+
+  /**
+   * Completes the request the message answers, returns false if there is none.
+   */
+  public boolean complete(InetSocketAddress peer, long nonce, KadMessage message) {
+    Request request = requests.remove(new Key(peer, message.getType(), nonce));
+    if (request == null) {
+      return false;
+    }
+    request.cancel();
+    request.onResponse.accept(message);
+    return true;
+  }
+
+  /**
+   * Drops a request without running its callbacks, returns false if there is none.
+   */
+  public boolean cancel(InetSocketAddress peer, MessageType type, long nonce) {
+    Request request = requests.remove(new Key(peer, type, nonce));
+    if (request == null) {
+      return false;
+    }
+    request.cancel();
+    return true;
+  }
+
+  public boolean isPending(InetSocketAddress peer, MessageType type, long nonce) {
+    return requests.containsKey(new Key(peer, type, nonce));
+  }
+
+  public int size() {
+    return requests.size();
+  }
+
+  public void clear() {
+    requests.values().forEach(Request::cancel);
+    requests.clear();
+  }
+
+  private static final class Request {
+    private final Consumer<KadMessage> onResponse;
+    private final Runnable onTimeout;
+    private volatile Timeout timeout;
+
+    private Request(Consumer<KadMessage> onResponse, Runnable onTimeout) {
+      this.onResponse = onResponse;
+      this.onTimeout = onTimeout;
+    }
+
+    private void cancel() {
+      Timeout t = timeout;
+      if (t != null) {
+        t.cancel();
+      }
+    }
+  }
+
+  private static final class Key {
+    private final InetSocketAddress peer;
+    private final MessageType type;
+    private final long nonce;
+
+    private Key(InetSocketAddress peer, MessageType type, long nonce) {
+      this.peer = peer;
+      this.type = type;
+      this.nonce = nonce;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key key = (Key) o;
+      return nonce == key.nonce && type == key.type && peer.equals(key.peer);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(peer, type, nonce);
+    }
+  }
+}
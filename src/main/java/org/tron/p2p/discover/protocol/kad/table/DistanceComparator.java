@@ -2,18 +2,19 @@ package org.tron.p2p.discover.protocol.kad.table;
 
 import java.util.Comparator;
 import org.tron.p2p.discover.Node;
+import org.tron.p2p.discover.NodeId;
 
 public class DistanceComparator implements Comparator<Node> {
-  private byte[] targetId;
+  private NodeId targetId;
 
   DistanceComparator(byte[] targetId) {
-    this.targetId = targetId;
+    this.targetId = new NodeId(targetId);
   }
 
   @Override
   public int compare(Node e1, Node e2) {
-    int d1 = NodeEntry.distance(targetId, e1.getId());
-    int d2 = NodeEntry.distance(targetId, e2.getId());
+    int d1 = NodeEntry.distance(targetId, e1.getNodeId());
+    int d2 = NodeEntry.distance(targetId, e2.getNodeId());
 
     if (d1 > d2) {
       return 1;
@@ -7,6 +7,12 @@ public class KademliaOptions {
   public static final int MAX_STEPS = 8;
   public static final int MAX_LOOP_NUM = 5;
 
+  public static final int MAX_CONCURRENT_LOOKUPS = 3;
+
   public static final long DISCOVER_CYCLE = 7200;       //discovery cycle interval in millis
-  public static final long WAIT_TIME = 100;       //wait time in millis
+  public static final long REQUEST_TIMEOUT = 1000;       //find node timeout in millis
+  public static final long BOND_EXPIRE = 12 * 3600 * 1000L; //pong proves an endpoint this long
+
+  public static final long TIMER_TICK = 100;       //timing wheel tick in millis
+  public static final int TIMER_WHEEL_SIZE = 512;
 }
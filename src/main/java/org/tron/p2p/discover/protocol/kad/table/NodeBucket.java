@@ -1,12 +1,12 @@
 package org.tron.p2p.discover.protocol.kad.table;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class NodeBucket {
   private final int depth;
-  private List<NodeEntry> nodes = new ArrayList<>();
+  // copy on write, readers iterate a stable snapshot while writers hold the bucket lock
+  private final List<NodeEntry> nodes = new CopyOnWriteArrayList<>();
 
   NodeBucket(int depth) {
     this.depth = depth;
@@ -29,18 +29,17 @@ public class NodeBucket {
   }
 
   private NodeEntry getLastSeen() {
-    List<NodeEntry> sorted = nodes;
-    Collections.sort(sorted, new TimeComparator());
-    return sorted.get(0);
-  }
-
-  public synchronized void dropNode(NodeEntry entry) {
+    NodeEntry lastSeen = null;
     for (NodeEntry e : nodes) {
-      if (e.getId().equals(entry.getId())) {
-        nodes.remove(e);
-        break;
+      if (lastSeen == null || e.getModified() > lastSeen.getModified()) {
+        lastSeen = e;
       }
     }
+    return lastSeen;
+  }
+
+  public synchronized void dropNode(NodeEntry entry) {
+    nodes.remove(entry);
   }
 
   public int getNodesCount() {
@@ -1,52 +1,34 @@
 package org.tron.p2p.discover.protocol.kad.table;
 
 import org.tron.p2p.discover.Node;
+import org.tron.p2p.discover.NodeId;
 
 public class NodeEntry {
   private Node node;
   private String entryId;
   private int distance;
-  private long modified;
+  private volatile long modified;
 
   public NodeEntry(byte[] ownerId, Node n) {
+    this(new NodeId(ownerId), n);
+  }
+
+  public NodeEntry(NodeId ownerId, Node n) {
     this.node = n;
     entryId = n.getHostKey();
-    distance = distance(ownerId, n.getId());
+    distance = distance(ownerId, n.getNodeId());
     touch();
   }
 
   public static int distance(byte[] ownerId, byte[] targetId) {
-    byte[] h1 = targetId;
-    byte[] h2 = ownerId;
-
-    byte[] hash = new byte[Math.min(h1.length, h2.length)];
-
-    for (int i = 0; i < hash.length; i++) {
-      hash[i] = (byte) (h1[i] ^ h2[i]);
-    }
-
-    int d = KademliaOptions.BINS;
-
-    for (byte b : hash) {
-      if (b == 0) {
-        d -= 8;
-      } else {
-        int count = 0;
-        for (int i = 7; i >= 0; i--) {
-          boolean a = ((b & 0xff) & (1 << i)) == 0;
-          if (a) {
-            count++;
-          } else {
-            break;
-          }
-        }
-
-        d -= count;
+    return distance(new NodeId(ownerId), new NodeId(targetId));
+  }
 
-        break;
-      }
-    }
-    return d;
+  /**
+   * Log distance, {@link KademliaOptions#BINS} minus the length of the common prefix.
+   */
+  public static int distance(NodeId ownerId, NodeId targetId) {
+    return KademliaOptions.BINS - ownerId.commonPrefixLength(targetId);
   }
 
   public void touch() {
@@ -1,16 +1,22 @@
 package org.tron.p2p.discover.protocol.kad.table;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.tron.p2p.discover.Node;
+import org.tron.p2p.discover.NodeId;
 
+/**
+ * Routing table safe for concurrent use. Writers lock only the bucket an entry belongs to, the
+ * host key index is a concurrent map and readers never lock.
+ */
 public class NodeTable {
   private final Node node;  // our node
   private transient NodeBucket[] buckets;
-  private transient Map<String, NodeEntry> nodes;
+  private transient ConcurrentMap<String, NodeEntry> nodes;
 
   public NodeTable(Node n) {
     this.node = n;
@@ -22,46 +28,61 @@ public class NodeTable {
   }
 
   public final void initialize() {
-    nodes = new HashMap<>();
+    nodes = new ConcurrentHashMap<>();
     buckets = new NodeBucket[KademliaOptions.BINS];
     for (int i = 0; i < KademliaOptions.BINS; i++) {
       buckets[i] = new NodeBucket(i);
     }
   }
 
-  public synchronized Node addNode(Node n) {
-    if (n.getHostKey().equals(node.getHostKey())) {
+  public Node addNode(Node n) {
+    String hostKey = n.getHostKey();
+    if (hostKey.equals(node.getHostKey())) {
       return null;
     }
 
-    NodeEntry entry = nodes.get(n.getHostKey());
+    NodeEntry entry = nodes.get(hostKey);
     if (entry != null) {
       entry.touch();
       return null;
     }
 
-    NodeEntry e = new NodeEntry(node.getId(), n);
-    NodeEntry lastSeen = buckets[getBucketId(e)].addNode(e);
-    if (lastSeen != null) {
-      return lastSeen.getNode();
+    NodeEntry e = new NodeEntry(node.getNodeId(), n);
+    NodeBucket bucket = buckets[getBucketId(e)];
+    // index and bucket of an entry are only changed under the lock of that bucket
+    synchronized (bucket) {
+      entry = nodes.putIfAbsent(hostKey, e);
+      if (entry != null) {
+        entry.touch();
+        return null;
+      }
+      NodeEntry lastSeen = bucket.addNode(e);
+      if (lastSeen != null) {
+        nodes.remove(hostKey, e);
+        return lastSeen.getNode();
+      }
     }
-    nodes.put(n.getHostKey(), e);
     return null;
   }
 
-  public synchronized void dropNode(Node n) {
-    NodeEntry entry = nodes.get(n.getHostKey());
+  public void dropNode(Node n) {
+    String hostKey = n.getHostKey();
+    NodeEntry entry = nodes.get(hostKey);
     if (entry != null) {
-      nodes.remove(n.getHostKey());
-      buckets[getBucketId(entry)].dropNode(entry);
+      NodeBucket bucket = buckets[getBucketId(entry)];
+      synchronized (bucket) {
+        if (nodes.remove(hostKey, entry)) {
+          bucket.dropNode(entry);
+        }
+      }
     }
   }
 
-  public synchronized boolean contains(Node n) {
+  public boolean contains(Node n) {
     return nodes.containsKey(n.getHostKey());
   }
 
-  public synchronized void touchNode(Node n) {
+  public void touchNode(Node n) {
     NodeEntry entry = nodes.get(n.getHostKey());
     if (entry != null) {
       entry.touch();
@@ -83,32 +104,96 @@ public class NodeTable {
     return Math.max(id, 0);
   }
 
-  public synchronized int getNodesCount() {
+  /**
+   * Number of entries in each bucket, indexed by bucket id.
+   */
+  public int[] getBucketFill() {
+    int[] fill = new int[buckets.length];
+    for (int i = 0; i < buckets.length; i++) {
+      fill[i] = buckets[i].getNodesCount();
+    }
+    return fill;
+  }
+
+  public int getNodesCount() {
     return nodes.size();
   }
 
-  public synchronized List<NodeEntry> getAllNodes() {
+  public List<NodeEntry> getAllNodes() {
     return new ArrayList<>(nodes.values());
   }
 
-  public synchronized List<Node> getClosestNodes(byte[] targetId) {
-    List<NodeEntry> closestEntries = getAllNodes();
-    List<Node> closestNodes = new ArrayList<>();
-    for (NodeEntry e : closestEntries) {
-      closestNodes.add((Node) e.getNode().clone());
+  /**
+   * Returns up to {@link KademliaOptions#BUCKET_SIZE} nodes closest to the target, nearest first.
+   *
+   * <p>Only nodes in the target's own bucket need their distance computed: a node in a lower
+   * bucket shares more prefix with us than the target does, so its distance to the target equals
+   * the target's distance to us, and a node in bucket {@code i} above the target's bucket is at
+   * distance {@code i + 1}. Buckets are visited in increasing distance and the walk stops as soon
+   * as the remaining buckets cannot beat the current top k.
+   */
+  public List<Node> getClosestNodes(byte[] targetId) {
+    NodeId target = new NodeId(targetId);
+    int targetDistance = NodeEntry.distance(node.getNodeId(), target);
+    int targetBucket = Math.max(targetDistance - 1, 0);
+    PriorityQueue<Candidate> closest = new PriorityQueue<>(KademliaOptions.BUCKET_SIZE + 1);
+
+    for (NodeEntry e : buckets[targetBucket].getNodes()) {
+      offer(closest, e, NodeEntry.distance(target, e.getNode().getNodeId()));
+    }
+    for (int i = targetBucket - 1; i >= 0 && !isSettled(closest, targetDistance); i--) {
+      for (NodeEntry e : buckets[i].getNodes()) {
+        offer(closest, e, targetDistance);
+      }
+    }
+    for (int i = targetBucket + 1; i < buckets.length && !isSettled(closest, i + 1); i++) {
+      for (NodeEntry e : buckets[i].getNodes()) {
+        offer(closest, e, i + 1);
+      }
+    }
+
+    Node[] closestNodes = new Node[closest.size()];
+    for (int i = closestNodes.length - 1; i >= 0; i--) {
+      closestNodes[i] = (Node) closest.poll().entry.getNode().clone();
     }
-    Collections.sort(closestNodes, new DistanceComparator(targetId));
-    if (closestNodes.size() > KademliaOptions.BUCKET_SIZE) {
-      closestNodes = closestNodes.subList(0, KademliaOptions.BUCKET_SIZE);
+    return new ArrayList<>(Arrays.asList(closestNodes));
+  }
+
+  private static void offer(PriorityQueue<Candidate> closest, NodeEntry e, int distance) {
+    if (closest.size() < KademliaOptions.BUCKET_SIZE) {
+      closest.add(new Candidate(e, distance));
+    } else if (distance < closest.peek().distance) {
+      closest.poll();
+      closest.add(new Candidate(e, distance));
     }
-    return closestNodes;
   }
 
-  public synchronized List<Node> getTableNodes() {
+  private static boolean isSettled(PriorityQueue<Candidate> closest, int nextDistance) {
+    return closest.size() >= KademliaOptions.BUCKET_SIZE
+        && closest.peek().distance <= nextDistance;
+  }
+
+  public List<Node> getTableNodes() {
     List<Node> nodeList = new ArrayList<>();
     for (NodeEntry nodeEntry : nodes.values()) {
       nodeList.add(nodeEntry.getNode());
     }
     return nodeList;
   }
+
+  // ordered farthest first, so the head of the queue is the one to evict
+  private static final class Candidate implements Comparable<Candidate> {
+    private final NodeEntry entry;
+    private final int distance;
+
+    private Candidate(NodeEntry entry, int distance) {
+      this.entry = entry;
+      this.distance = distance;
+    }
+
+    @Override
+    public int compareTo(Candidate o) {
+      return Integer.compare(o.distance, distance);
+    }
+  }
 }
@@ -3,20 +3,39 @@ package org.tron.p2p.discover.socket;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
 import io.netty.channel.socket.nio.NioDatagramChannel;
 import io.netty.handler.codec.protobuf.ProtobufVarint32FrameDecoder;
 import io.netty.handler.codec.protobuf.ProtobufVarint32LengthFieldPrepender;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.tron.p2p.base.Parameter;
 import org.tron.p2p.stats.TrafficStats;
 
+/**
+ * Discovery UDP server. With epoll and more than one udp thread, one datagram channel per thread
+ * is bound to the same port with SO_REUSEPORT and the kernel spreads datagrams across them.
+ * Events of one peer may still arrive on several threads, next to timer and lookup callbacks, so
+ * node handlers serialize their own state transitions. Elsewhere a single NIO channel is used.
+ */
 @Slf4j(topic = "net")
 public class DiscoverServer {
 
-  private Channel channel;
+  private final List<Channel> channels = new CopyOnWriteArrayList<>();
+  private volatile MessageHandler[] senders = new MessageHandler[0];
+  private final AtomicInteger nextSender = new AtomicInteger();
+  private final RateLimitFilter rateLimitFilter = new RateLimitFilter();
   private EventHandler eventHandler;
 
   private final int SERVER_RESTART_WAIT = 5000;
@@ -26,6 +45,7 @@ public class DiscoverServer {
 
   public void init(EventHandler eventHandler) {
     this.eventHandler = eventHandler;
+    eventHandler.setMessageSender(this::send);
     new Thread(() -> {
       try {
         start();
@@ -38,7 +58,7 @@ public class DiscoverServer {
   public void close() {
     log.info("Closing discovery server...");
     shutdown = true;
-    if (channel != null) {
+    for (Channel channel : channels) {
       try {
         channel.close().await(SERVER_CLOSE_WAIT, TimeUnit.SECONDS);
       } catch (Exception e) {
@@ -47,33 +67,69 @@ public class DiscoverServer {
     }
   }
 
+  // all channels share the local address, so outbound packets are spread over them in turn
+  private void send(UdpEvent udpEvent) {
+    MessageHandler[] handlers = senders;
+    if (handlers.length == 0) {
+      return;
+    }
+    handlers[Math.floorMod(nextSender.getAndIncrement(), handlers.length)].accept(udpEvent);
+  }
+
+  private synchronized void addSender(MessageHandler messageHandler) {
+    MessageHandler[] handlers = Arrays.copyOf(senders, senders.length + 1);
+    handlers[handlers.length - 1] = messageHandler;
+    senders = handlers;
+  }
+
   private void start() throws Exception {
-    NioEventLoopGroup group = new NioEventLoopGroup(Parameter.UDP_NETTY_WORK_THREAD_NUM,
-        new BasicThreadFactory.Builder().namingPattern("discoverServer").build());
+    boolean epoll = Epoll.isAvailable();
+    int threads = epoll ? Parameter.p2pConfig.getUdpThreads()
+        : Parameter.UDP_NETTY_WORK_THREAD_NUM;
+    if (threads <= 0) {
+      threads = Runtime.getRuntime().availableProcessors();
+    }
+    BasicThreadFactory threadFactory = new BasicThreadFactory.Builder()
+        .namingPattern("discoverServer-%d").build();
+    EventLoopGroup group = epoll ? new EpollEventLoopGroup(threads, threadFactory)
+        : new NioEventLoopGroup(threads, threadFactory);
     try {
       while (!shutdown) {
         Bootstrap b = new Bootstrap();
         b.group(group)
-            .channel(NioDatagramChannel.class)
-            .handler(new ChannelInitializer<NioDatagramChannel>() {
+            .channel(epoll ? EpollDatagramChannel.class : NioDatagramChannel.class)
+            .handler(new ChannelInitializer<DatagramChannel>() {
               @Override
-              public void initChannel(NioDatagramChannel ch)
+              public void initChannel(DatagramChannel ch)
                   throws Exception {
                 ch.pipeline().addLast(TrafficStats.udp);
+                ch.pipeline().addLast(rateLimitFilter);
                 ch.pipeline().addLast(new ProtobufVarint32LengthFieldPrepender());
                 ch.pipeline().addLast(new ProtobufVarint32FrameDecoder());
                 ch.pipeline().addLast(new P2pPacketDecoder());
                 MessageHandler messageHandler = new MessageHandler(ch, eventHandler);
-                eventHandler.setMessageSender(messageHandler);
+                addSender(messageHandler);
                 ch.pipeline().addLast(messageHandler);
               }
             });
+        if (epoll) {
+          b.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
 
-        channel = b.bind(port).sync().channel();
+        senders = new MessageHandler[0];
+        channels.clear();
+        for (int i = 0; i < threads; i++) {
+          channels.add(b.bind(port).sync().channel());
+        }
 
-        log.info("Discovery server started, bind port {}", port);
+        log.info("Discovery server started, bind port {} with {} {} channels", port,
+            channels.size(), epoll ? "epoll" : "nio");
 
-        channel.closeFuture().sync();
+        // a failed channel restarts them all, so that shards stay on one set of channels
+        for (Channel channel : channels) {
+          channel.closeFuture().addListener(f -> channels.forEach(Channel::close));
+        }
+        channels.get(0).closeFuture().sync();
         if (shutdown) {
           log.info("Shutdown discovery server");
           break;
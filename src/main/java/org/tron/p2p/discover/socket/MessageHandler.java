@@ -1,15 +1,27 @@
 package org.tron.p2p.discover.socket;
 
 import java.net.InetSocketAddress;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.socket.DatagramPacket;
-import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.DatagramChannel;
 import lombok.extern.slf4j.Slf4j;
+import org.tron.p2p.base.Parameter;
+import org.tron.p2p.discover.message.Message;
+import org.tron.p2p.utils.TokenBucket;
 
+/**
+ * Outbound packets are queued and written by the channel's event loop in batches with a single
+ * flush, so that epoll can hand the whole batch to one sendmmsg call.
+ */
 @Slf4j(topic = "net")
 public class MessageHandler extends SimpleChannelInboundHandler<UdpEvent>
     implements Consumer<UdpEvent> {
@@ -18,9 +30,18 @@ public class MessageHandler extends SimpleChannelInboundHandler<UdpEvent>
 
   private EventHandler eventHandler;
 
-  public MessageHandler(NioDatagramChannel channel, EventHandler eventHandler) {
+  private static final int MAX_QUEUE_SIZE = 4096;
+
+  private final Queue<UdpEvent> sendQueue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger queueSize = new AtomicInteger();
+  private final AtomicBoolean drainScheduled = new AtomicBoolean();
+  private final TokenBucket sendLimiter;
+
+  public MessageHandler(DatagramChannel channel, EventHandler eventHandler) {
     this.channel = channel;
     this.eventHandler = eventHandler;
+    int rate = Parameter.p2pConfig.getUdpSendRate();
+    this.sendLimiter = rate > 0 ? new TokenBucket(rate, Math.max(1, rate / 10)) : null;
   }
 
   @Override
@@ -30,27 +51,64 @@ public class MessageHandler extends SimpleChannelInboundHandler<UdpEvent>
 
   @Override
   public void channelRead0(ChannelHandlerContext ctx, UdpEvent udpEvent) {
-    log.debug("Rcv udp msg type {}, len {} from {} ",
-        udpEvent.getMessage().getType(),
-        udpEvent.getMessage().getSendData().length,
-        udpEvent.getAddress());
+    if (log.isDebugEnabled()) {
+      log.debug("Rcv udp msg type {}, len {} from {} ",
+          udpEvent.getMessage().getType(),
+          udpEvent.getMessage().getSendLength(),
+          udpEvent.getAddress());
+    }
     eventHandler.handleEvent(udpEvent);
   }
 
   @Override
   public void accept(UdpEvent udpEvent) {
-    log.debug("Send udp msg type {}, len {} to {} ",
-        udpEvent.getMessage().getType(),
-        udpEvent.getMessage().getSendData().length,
-        udpEvent.getAddress());
-    InetSocketAddress address = udpEvent.getAddress();
-    sendPacket(udpEvent.getMessage().getSendData(), address);
+    if (log.isDebugEnabled()) {
+      log.debug("Send udp msg type {}, len {} to {} ",
+          udpEvent.getMessage().getType(),
+          udpEvent.getMessage().getSendLength(),
+          udpEvent.getAddress());
+    }
+    if (queueSize.incrementAndGet() > MAX_QUEUE_SIZE) {
+      queueSize.decrementAndGet();
+      log.debug("Udp send queue full, drop msg type {} to {}", udpEvent.getMessage().getType(),
+          udpEvent.getAddress());
+      return;
+    }
+    sendQueue.offer(udpEvent);
+    if (drainScheduled.compareAndSet(false, true)) {
+      channel.eventLoop().execute(this::drain);
+    }
+  }
+
+  private void drain() {
+    drainScheduled.set(false);
+    int written = 0;
+    UdpEvent udpEvent;
+    while ((udpEvent = sendQueue.peek()) != null) {
+      if (sendLimiter != null && !sendLimiter.tryAcquire()) {
+        // resume when the next token is due, unless a drain is already on its way
+        if (drainScheduled.compareAndSet(false, true)) {
+          channel.eventLoop().schedule(this::drain, sendLimiter.nanosToWait(),
+              TimeUnit.NANOSECONDS);
+        }
+        break;
+      }
+      sendQueue.poll();
+      queueSize.decrementAndGet();
+      writePacket(udpEvent.getMessage(), udpEvent.getAddress());
+      written++;
+    }
+    if (written > 0) {
+      channel.flush();
+    }
   }
 
-  void sendPacket(byte[] wire, InetSocketAddress address) {
-    DatagramPacket packet = new DatagramPacket(Unpooled.copiedBuffer(wire), address);
-    channel.write(packet);
-    channel.flush();
+  private void writePacket(Message message, InetSocketAddress address) {
+    byte[] data = message.getData();
+    ByteBuf buf = channel.alloc().ioBuffer(data.length + 1);
+    buf.writeByte(message.getType().getType());
+    buf.writeBytes(data);
+    channel.write(new DatagramPacket(buf, address), channel.voidPromise());
   }
 
   @Override
@@ -3,13 +3,13 @@ package org.tron.p2p.discover.socket;
 import com.google.protobuf.InvalidProtocolBufferException;
 import java.util.List;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.socket.DatagramPacket;
 import io.netty.handler.codec.MessageToMessageDecoder;
 import lombok.extern.slf4j.Slf4j;
 import org.tron.p2p.discover.message.Message;
 import org.tron.p2p.exception.P2pException;
-import org.tron.p2p.utils.ByteArray;
 
 @Slf4j(topic = "net")
 public class P2pPacketDecoder extends MessageToMessageDecoder<DatagramPacket> {
@@ -25,27 +25,26 @@ public class P2pPacketDecoder extends MessageToMessageDecoder<DatagramPacket> {
       log.warn("UDP rcv bad packet, from {} length = {}", ctx.channel().remoteAddress(), length);
       return;
     }
-    byte[] encoded = new byte[length];
-    buf.readBytes(encoded);
+    byte type = buf.getByte(buf.readerIndex());
     try {
-      UdpEvent event = new UdpEvent(Message.parse(encoded), packet.sender());
+      UdpEvent event = new UdpEvent(Message.parse(buf), packet.sender());
       out.add(event);
     } catch (P2pException pe) {
       if (pe.getType().equals(P2pException.TypeEnum.BAD_MESSAGE)) {
-        log.error("Message validation failed, type {}, len {}, address {}", encoded[0],
-            encoded.length, packet.sender());
+        log.error("Message validation failed, type {}, len {}, address {}", type,
+            length, packet.sender());
       } else {
-        log.info("Parse msg failed, type {}, len {}, address {}", encoded[0], encoded.length,
+        log.info("Parse msg failed, type {}, len {}, address {}", type, length,
             packet.sender());
       }
     } catch (InvalidProtocolBufferException e) {
       log.warn("An exception occurred while parsing the message, type {}, len {}, address {}, "
-              + "data {}, cause: {}", encoded[0], encoded.length, packet.sender(),
-          ByteArray.toHexString(encoded), e.getMessage());
+              + "data {}, cause: {}", type, length, packet.sender(),
+          ByteBufUtil.hexDump(buf), e.getMessage());
     } catch (Exception e) {
       log.error("An exception occurred while parsing the message, type {}, len {}, address {}, "
-              + "data {}", encoded[0], encoded.length, packet.sender(),
-          ByteArray.toHexString(encoded), e);
+              + "data {}", type, length, packet.sender(),
+          ByteBufUtil.hexDump(buf), e);
     }
   }
 }
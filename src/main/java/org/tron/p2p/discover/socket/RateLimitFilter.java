@@ -0,0 +1,88 @@
+package org.tron.p2p.discover.socket;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.ReferenceCountUtil;
+import java.net.InetAddress;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.p2p.utils.TokenBucket;
+
+/**
+ * Drops inbound datagrams from sources sending faster than a per-ip or a per-prefix (/24 for
+ * ipv4, /48 for ipv6) token bucket allows, before they are decoded. Shared by all discovery
+ * channels.
+ */
+@Slf4j(topic = "net")
+@ChannelHandler.Sharable
+public class RateLimitFilter extends ChannelInboundHandlerAdapter {
+
+  private static final int IP_RATE = 20;
+  private static final int IP_BURST = 50;
+  private static final int PREFIX_RATE = 100;
+  private static final int PREFIX_BURST = 200;
+  private static final int MAX_SOURCES = 10000;
+
+  @Getter
+  private static final AtomicLong droppedByIp = new AtomicLong();
+  @Getter
+  private static final AtomicLong droppedByPrefix = new AtomicLong();
+
+  private final Cache<InetAddress, TokenBucket> ipBuckets = CacheBuilder.newBuilder()
+      .maximumSize(MAX_SOURCES).expireAfterAccess(1, TimeUnit.MINUTES).build();
+
+  private final Cache<Long, TokenBucket> prefixBuckets = CacheBuilder.newBuilder()
+      .maximumSize(MAX_SOURCES).expireAfterAccess(1, TimeUnit.MINUTES).build();
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof DatagramPacket) {
+      InetAddress address = ((DatagramPacket) msg).sender().getAddress();
+      if (!acquire(ipBuckets, address, IP_RATE, IP_BURST)) {
+        drop(msg, droppedByIp, address);
+        return;
+      }
+      if (!acquire(prefixBuckets, prefix(address), PREFIX_RATE, PREFIX_BURST)) {
+        drop(msg, droppedByPrefix, address);
+        return;
+      }
+    }
+    super.channelRead(ctx, msg);
+  }
+
+  private static <K> boolean acquire(Cache<K, TokenBucket> buckets, K key, int rate, int burst)
+      throws ExecutionException {
+    return buckets.get(key, () -> new TokenBucket(rate, burst)).tryAcquire();
+  }
+
+  private static void drop(Object msg, AtomicLong counter, InetAddress address) {
+    if (counter.incrementAndGet() % 1000 == 1) {
+      log.warn("Udp rate limit exceeded, drop packet from {}, {} dropped", address,
+          counter.get());
+    }
+    ReferenceCountUtil.release(msg);
+  }
+
+  /**
+   * The /24 network of an ipv4 address or the /48 network of an ipv6 address, ipv4 keys are
+   * below 2^24 and ipv6 keys above 2^48 so they never collide.
+   */
+  public static long prefix(InetAddress address) {
+    byte[] bytes = address.getAddress();
+    if (bytes.length == 4) {
+      return (bytes[0] & 0xFFL) << 16 | (bytes[1] & 0xFFL) << 8 | (bytes[2] & 0xFFL);
+    }
+    long key = 1;
+    for (int i = 0; i < 6; i++) {
+      key = key << 8 | (bytes[i] & 0xFFL);
+    }
+    return key;
+  }
+}
@@ -2,17 +2,23 @@ package org.tron.p2p.dns;
 
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
+import org.tron.p2p.base.Parameter;
 import org.tron.p2p.discover.Node;
 import org.tron.p2p.dns.sync.Client;
 import org.tron.p2p.dns.sync.RandomIterator;
+import org.tron.p2p.dns.tree.Entry;
 import org.tron.p2p.dns.tree.Tree;
 import org.tron.p2p.dns.update.PublishService;
+import org.tron.p2p.stats.DnsRandomStats;
 import org.tron.p2p.utils.NetUtil;
 
 @Slf4j(topic = "net")
@@ -22,14 +28,16 @@ public class DnsManager {
   private static Client syncClient;
   private static RandomIterator randomIterator;
   private static Set<String> localIpSet;
+  private static volatile Snapshot snapshot;
 
   public static void init() {
+    localIpSet = NetUtil.getAllLocalAddress();
+    snapshot = null;
     publishService = new PublishService();
     syncClient = new Client();
     publishService.init();
     syncClient.init();
     randomIterator = syncClient.newIterator();
-    localIpSet = NetUtil.getAllLocalAddress();
   }
 
   public static void close() {
@@ -44,13 +52,25 @@ public class DnsManager {
     }
   }
 
+  /**
+   * Connectable nodes of all trees. The list is shared and read only, it is only built again
+   * after a tree changed.
+   */
   public static List<DnsNode> getDnsNodes() {
+    Snapshot current = snapshot;
+    if (current == null || !current.matches(syncClient.getTrees())) {
+      current = new Snapshot(syncClient.getTrees());
+      snapshot = current;
+    }
+    return current.nodes;
+  }
+
+  private static List<DnsNode> buildDnsNodes(Map<String, Tree> trees) {
     Set<DnsNode> nodes = new HashSet<>();
-    for (Map.Entry<String, Tree> entry : syncClient.getTrees().entrySet()) {
+    for (Map.Entry<String, Tree> entry : trees.entrySet()) {
       Tree tree = entry.getValue();
       int v4Size = 0, v6Size = 0;
       List<DnsNode> dnsNodes = tree.getDnsNodes();
-      List<DnsNode> ipv6Nodes = new ArrayList<>();
       for (DnsNode dnsNode : dnsNodes) {
         //log.debug("DnsNode:{}", dnsNode);
         if (dnsNode.getInetSocketAddressV4() != null) {
@@ -58,7 +78,6 @@ public class DnsManager {
         }
         if (dnsNode.getInetSocketAddressV6() != null) {
           v6Size += 1;
-          ipv6Nodes.add(dnsNode);
         }
       }
       List<DnsNode> connectAbleNodes = dnsNodes.stream()
@@ -70,10 +89,60 @@ public class DnsManager {
           entry.getKey(), dnsNodes.size(), v4Size, v6Size, connectAbleNodes.size());
       nodes.addAll(connectAbleNodes);
     }
-    return new ArrayList<>(nodes);
+    return Collections.unmodifiableList(new ArrayList<>(nodes));
+  }
+
+  /**
+   * Nodes built from the trees as they were. A sync either replaces the entries of a tree or, the
+   * first time, fills them in place, so the entry maps and their sizes tell if a tree changed.
+   * Which address of a node is connectable depends on the home addresses, which are looked up
+   * or voted after start, so they are part of the key too.
+   */
+  private static class Snapshot {
+
+    private final Map<String, Map<String, Entry>> entries = new HashMap<>();
+    private final Map<String, Integer> sizes = new HashMap<>();
+    private final String ip = Parameter.p2pConfig.getIp();
+    private final String ipv6 = Parameter.p2pConfig.getIpv6();
+    private final List<DnsNode> nodes;
+
+    Snapshot(Map<String, Tree> trees) {
+      trees.forEach((url, tree) -> {
+        entries.put(url, tree.getEntries());
+        sizes.put(url, tree.getEntries().size());
+      });
+      nodes = buildDnsNodes(trees);
+    }
+
+    boolean matches(Map<String, Tree> trees) {
+      if (!Objects.equals(ip, Parameter.p2pConfig.getIp())
+          || !Objects.equals(ipv6, Parameter.p2pConfig.getIpv6())
+          || trees.size() != entries.size()) {
+        return false;
+      }
+      for (Map.Entry<String, Tree> tree : trees.entrySet()) {
+        Map<String, Entry> treeEntries = tree.getValue().getEntries();
+        if (entries.get(tree.getKey()) != treeEntries
+            || sizes.get(tree.getKey()) != treeEntries.size()) {
+          return false;
+        }
+      }
+      return true;
+    }
   }
 
   public static Node getRandomNodes() {
     return randomIterator.next();
   }
+
+  /**
+   * A prefetched random node without waiting for dns lookups, null if none is buffered yet.
+   */
+  public static Node pollRandomNode() {
+    return randomIterator == null ? null : randomIterator.poll();
+  }
+
+  public static DnsRandomStats getRandomStats() {
+    return randomIterator == null ? null : randomIterator.getStats();
+  }
 }
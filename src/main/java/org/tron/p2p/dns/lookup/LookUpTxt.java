@@ -2,18 +2,18 @@ package org.tron.p2p.dns.lookup;
 
 
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
-import java.time.Duration;
-import java.util.Random;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.tron.p2p.base.Parameter;
-import org.xbill.DNS.Lookup;
 import org.xbill.DNS.Record;
-import org.xbill.DNS.SimpleResolver;
 import org.xbill.DNS.TXTRecord;
 import org.xbill.DNS.TextParseException;
-import org.xbill.DNS.Type;
 
 @Slf4j(topic = "net")
 public class LookUpTxt {
@@ -48,7 +48,10 @@ public class LookUpTxt {
   };
 
   static int maxRetryTimes = 5;
-  static Random random = new Random();
+
+  private static volatile ResolverPool poolV4;
+  private static volatile ResolverPool poolV6;
+  private static volatile ResolverPool configuredPool;
 
   public static TXTRecord lookUpTxt(String hash, String domain)
       throws TextParseException, UnknownHostException {
@@ -60,42 +63,55 @@ public class LookUpTxt {
   public static TXTRecord lookUpTxt(String name) throws TextParseException, UnknownHostException {
     TXTRecord txt = null;
     log.info("LookUp name: {}", name);
-    Lookup lookup = new Lookup(name, Type.TXT);
-    int times = 0;
-    Record[] records = null;
     long start = System.currentTimeMillis();
-    while (times < maxRetryTimes) {
-      String publicDns;
-      if (StringUtils.isNotEmpty(Parameter.p2pConfig.getIp())) {
-        publicDns = publicDnsV4[random.nextInt(publicDnsV4.length)];
-      } else {
-        publicDns = publicDnsV6[random.nextInt(publicDnsV6.length)];
-      }
-      SimpleResolver simpleResolver = new SimpleResolver(InetAddress.getByName(publicDns));
-      simpleResolver.setTimeout(Duration.ofMillis(1000));
-      lookup.setResolver(simpleResolver);
-      long thisTime = System.currentTimeMillis();
-      records = lookup.run();
-      long end = System.currentTimeMillis();
-      times += 1;
-      if (records != null) {
-        log.debug("Succeed to use dns: {}, cur cost: {}ms, total cost: {}ms", publicDns,
-            end - thisTime, end - start);
-        break;
-      } else {
-        log.debug("Failed to use dns: {}, cur cost: {}ms", publicDns, end - thisTime);
-      }
-    }
+    List<Record> records = getPool().lookup(name, maxRetryTimes);
     if (records == null) {
       log.error("Failed to lookUp name:{}", name);
       return null;
     }
+    log.debug("LookUp name: {}, total cost: {}ms", name, System.currentTimeMillis() - start);
     for (Record item : records) {
-      txt = (TXTRecord) item;
+      if (item instanceof TXTRecord) {
+        txt = (TXTRecord) item;
+      }
     }
     return txt;
   }
 
+  /**
+   * The configured resolvers if any, otherwise the public resolvers of the address family we
+   * have. Pools are kept across lookups so that they learn which servers are fast.
+   */
+  static ResolverPool getPool() throws UnknownHostException {
+    List<InetSocketAddress> configured = Parameter.p2pConfig.getDnsResolvers();
+    if (!configured.isEmpty()) {
+      ResolverPool pool = configuredPool;
+      if (pool == null || !pool.getAddresses().equals(configured)) {
+        pool = new ResolverPool(configured);
+        configuredPool = pool;
+      }
+      return pool;
+    }
+    if (StringUtils.isNotEmpty(Parameter.p2pConfig.getIp())) {
+      if (poolV4 == null) {
+        poolV4 = new ResolverPool(toAddresses(publicDnsV4));
+      }
+      return poolV4;
+    }
+    if (poolV6 == null) {
+      poolV6 = new ResolverPool(toAddresses(publicDnsV6));
+    }
+    return poolV6;
+  }
+
+  private static List<InetSocketAddress> toAddresses(String[] ips) throws UnknownHostException {
+    List<InetSocketAddress> addresses = new ArrayList<>();
+    for (String ip : new LinkedHashSet<>(Arrays.asList(ips))) {
+      addresses.add(new InetSocketAddress(InetAddress.getByName(ip), 53));
+    }
+    return addresses;
+  }
+
   public static String joinTXTRecord(TXTRecord txtRecord) {
     StringBuilder sb = new StringBuilder();
     for (String s : txtRecord.getStrings()) {
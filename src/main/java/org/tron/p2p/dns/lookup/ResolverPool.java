@@ -0,0 +1,248 @@
+package org.tron.p2p.dns.lookup;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.SimpleResolver;
+import org.xbill.DNS.TextParseException;
+import org.xbill.DNS.Type;
+
+/**
+ * A set of dns servers that learns which of them answer fast. Each server keeps an exponentially
+ * weighted average of its latency and of its failure rate, queries go to the best healthy server
+ * and now and then to a random one so that the averages of the others stay current. If the
+ * chosen server has not answered once the 90th percentile of recent latencies has passed, the
+ * query is also sent to a second server and the first answer wins.
+ */
+@Slf4j(topic = "net")
+public class ResolverPool {
+
+  static final long TIMEOUT = 1000;
+  static final long MIN_HEDGE_DELAY = 50;
+  private static final double ALPHA = 0.2;
+  private static final double EXPLORE = 0.1;
+  private static final double MAX_FAILURE_RATE = 0.5;
+  private static final int LATENCY_WINDOW = 128;
+
+  @Getter
+  private final List<InetSocketAddress> addresses;
+  private final List<Server> servers = new ArrayList<>();
+  private final Random random;
+
+  // latencies of the last answers of all servers, in millis
+  private final long[] latencies = new long[LATENCY_WINDOW];
+  private int latencyCount;
+
+  public ResolverPool(List<InetSocketAddress> addresses) {
+    this(addresses, new Random());
+  }
+
+  ResolverPool(List<InetSocketAddress> addresses, Random random) {
+    this.addresses = Collections.unmodifiableList(new ArrayList<>(addresses));
+    this.random = random;
+    for (InetSocketAddress address : addresses) {
+      servers.add(new Server(address));
+    }
+  }
+
+  /**
+   * Answer records of the query, null if no server answered within maxAttempts attempts.
+   */
+  public List<Record> lookup(String name, int type, int maxAttempts) throws TextParseException {
+    Message query = Message.newQuery(
+        Record.newRecord(Name.fromString(name, Name.root), type, DClass.IN));
+    // servers asked in this lookup, the next attempt goes to one that was not asked yet
+    Set<Server> tried = new HashSet<>();
+    for (int attempt = 0; attempt < maxAttempts; attempt++) {
+      if (tried.size() == servers.size()) {
+        tried.clear();
+      }
+      Attempt current = new Attempt(query);
+      Server primary = pick(tried);
+      tried.add(primary);
+      current.send(primary);
+      List<Record> records = current.await(hedgeDelay());
+      if (!current.result.isDone()) {
+        Server backup = pick(tried);
+        if (backup != null) {
+          tried.add(backup);
+          current.send(backup);
+        }
+        records = current.await(TIMEOUT);
+      }
+      if (records != null) {
+        return records;
+      }
+    }
+    return null;
+  }
+
+  public List<Record> lookup(String name, int maxAttempts) throws TextParseException {
+    return lookup(name, Type.TXT, maxAttempts);
+  }
+
+  /**
+   * The healthy server with the lowest latency, or a random one to keep exploring. Servers that
+   * fail most of their queries are only used when all of them do.
+   */
+  Server pick(Server exclude) {
+    return pick(exclude == null ? Collections.emptySet() : Collections.singleton(exclude));
+  }
+
+  Server pick(Set<Server> exclude) {
+    List<Server> candidates = new ArrayList<>(servers);
+    candidates.removeAll(exclude);
+    if (candidates.isEmpty()) {
+      return null;
+    }
+    if (random.nextDouble() < EXPLORE) {
+      return candidates.get(random.nextInt(candidates.size()));
+    }
+    Server best = null;
+    for (Server server : candidates) {
+      if (best == null || (server.isHealthy() && !best.isHealthy())
+          || (server.isHealthy() == best.isHealthy() && server.latency < best.latency)) {
+        best = server;
+      }
+    }
+    return best;
+  }
+
+  synchronized long hedgeDelay() {
+    int n = Math.min(latencyCount, LATENCY_WINDOW);
+    if (n == 0) {
+      return TIMEOUT / 2;
+    }
+    long[] sorted = Arrays.copyOf(latencies, n);
+    Arrays.sort(sorted);
+    long p90 = sorted[(int) Math.ceil(n * 0.9) - 1];
+    return Math.max(MIN_HEDGE_DELAY, Math.min(TIMEOUT, p90));
+  }
+
+  synchronized void recordLatency(long millis) {
+    latencies[latencyCount++ % LATENCY_WINDOW] = millis;
+  }
+
+  // a NOERROR response without a record of the asked type is as good as NXDOMAIN
+  static boolean hasAnswer(Message response, int type) {
+    if (response.getRcode() != Rcode.NOERROR) {
+      return false;
+    }
+    for (Record record : response.getSection(Section.ANSWER)) {
+      if (record.getType() == type) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  List<Server> getServers() {
+    return servers;
+  }
+
+  class Server {
+
+    private final InetSocketAddress address;
+    private final SimpleResolver resolver;
+    // averages start at zero, so every server is tried before the best one is preferred
+    private volatile double latency;
+    private volatile double failureRate;
+
+    Server(InetSocketAddress address) {
+      this.address = address;
+      this.resolver = new SimpleResolver(address);
+      this.resolver.setTimeout(Duration.ofMillis(TIMEOUT));
+    }
+
+    boolean isHealthy() {
+      return failureRate < MAX_FAILURE_RATE;
+    }
+
+    synchronized void onSuccess(long millis) {
+      latency = latency == 0 ? millis : latency + ALPHA * (millis - latency);
+      failureRate = failureRate * (1 - ALPHA);
+      recordLatency(millis);
+    }
+
+    synchronized void onFailure() {
+      // a timeout counts as a slow answer too
+      latency = latency + ALPHA * (TIMEOUT - latency);
+      failureRate = failureRate * (1 - ALPHA) + ALPHA;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s, latency %.0f ms, failure rate %.2f", address, latency,
+          failureRate);
+    }
+  }
+
+  // one query sent to one or two servers, completed by the first answer or by the last failure
+  private static class Attempt {
+
+    private final Message query;
+    private final CompletableFuture<List<Record>> result = new CompletableFuture<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    Attempt(Message query) {
+      this.query = query;
+    }
+
+    void send(Server server) {
+      pending.incrementAndGet();
+      long start = System.currentTimeMillis();
+      server.resolver.sendAsync(query.clone()).whenComplete((response, e) -> {
+        long cost = System.currentTimeMillis() - start;
+        if (e == null && hasAnswer(response, query.getQuestion().getType())) {
+          server.onSuccess(cost);
+          result.complete(response.getSection(Section.ANSWER));
+          return;
+        }
+        if (e == null && (response.getRcode() == Rcode.NOERROR
+            || response.getRcode() == Rcode.NXDOMAIN)) {
+          // the server is fine, the name may just not have reached its cache yet
+          server.onSuccess(cost);
+        } else {
+          server.onFailure();
+        }
+        log.debug("Failed to use dns: {}, cur cost: {}ms", server, cost);
+        if (pending.decrementAndGet() == 0) {
+          result.complete(null);
+        }
+      });
+    }
+
+    List<Record> await(long millis) {
+      try {
+        return result.get(millis, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        return null;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        result.complete(null);
+        return null;
+      } catch (ExecutionException e) {
+        return null;
+      }
+    }
+  }
+}
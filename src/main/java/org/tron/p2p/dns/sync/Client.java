@@ -7,10 +7,15 @@ import java.net.UnknownHostException;
 import java.security.SignatureException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -44,15 +49,27 @@ public class Client {
   private final ScheduledExecutorService syncer = Executors.newSingleThreadScheduledExecutor(
       new BasicThreadFactory.Builder().namingPattern("dnsSyncer").build());
 
+  // entry lookups of the subtree syncs, threads exit when idle between syncs
+  private final ThreadPoolExecutor resolver;
+  // lookups in flight, a hash wanted by several syncs is only looked up once
+  private final Map<String, CompletableFuture<Entry>> inflight = new ConcurrentHashMap<>();
+
   public Client() {
     this.cache = CacheBuilder.newBuilder()
         .maximumSize(cacheLimit)
         .recordStats()
         .build();
+    int parallelism = Math.max(1, Parameter.p2pConfig.getDnsSyncParallelism());
+    this.resolver = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(),
+        new BasicThreadFactory.Builder().namingPattern("dnsResolver-%d").daemon(true).build());
+    this.resolver.allowCoreThreadTimeOut(true);
   }
 
   public void init() {
     if (!Parameter.p2pConfig.getTreeUrls().isEmpty()) {
+      // the trees of the last run serve nodes until the first sync refreshes them
+      trees.putAll(TreeStore.load(Parameter.p2pConfig.getTreeUrls()));
       syncer.scheduleWithFixedDelay(this::startSync, 5, recheckInterval,
           TimeUnit.SECONDS);
     }
@@ -71,6 +88,7 @@ public class Client {
         continue;
       }
     }
+    TreeStore.save(trees);
   }
 
   public void syncTree(String urlScheme, ClientTree clientTree, Tree tree) throws Exception {
@@ -85,15 +103,10 @@ public class Client {
       // when sync tree first time, we can get the entries dynamically
       clientTree.syncAll(tree.getEntries());
     } else {
-      Map<String, Entry> tmpEntries = new HashMap<>();
-      boolean[] isRootUpdate = clientTree.syncAll(tmpEntries);
-      if (!isRootUpdate[0]) {
-        tmpEntries.putAll(tree.getLinksMap());
-      }
-      if (!isRootUpdate[1]) {
-        tmpEntries.putAll(tree.getNodesMap());
-      }
-      // we update the entries after sync finishes, ignore branch difference
+      // walk the tree again from its roots, only the entries we do not hold are looked up and
+      // the entries that are no longer reachable are dropped when the new map replaces the old
+      Map<String, Entry> tmpEntries = new ConcurrentHashMap<>();
+      clientTree.syncAll(tmpEntries, tree.getEntries());
       tree.setEntries(tmpEntries);
     }
 
@@ -133,6 +146,59 @@ public class Client {
     return entry;
   }
 
+  /**
+   * Like {@link #resolveEntry}, but the lookup runs on the resolver pool.
+   */
+  public CompletableFuture<Entry> resolveEntryAsync(String domain, String hash) {
+    Entry entry = cache.getIfPresent(hash);
+    if (entry != null) {
+      return CompletableFuture.completedFuture(entry);
+    }
+    CompletableFuture<Entry> future = new CompletableFuture<>();
+    CompletableFuture<Entry> existing = inflight.putIfAbsent(hash, future);
+    if (existing != null) {
+      return existing;
+    }
+    try {
+      resolver.execute(() -> {
+        try {
+          future.complete(resolveEntry(domain, hash));
+        } catch (Exception e) {
+          future.completeExceptionally(e);
+        } finally {
+          inflight.remove(hash, future);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      inflight.remove(hash, future);
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  /**
+   * Waits for an asynchronous lookup and rethrows its failure as thrown by {@link #resolveEntry}.
+   */
+  public static Entry await(CompletableFuture<Entry> future)
+      throws DnsException, TextParseException, UnknownHostException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DnsException(TypeEnum.OTHER_ERROR, "interrupted", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof DnsException) {
+        throw (DnsException) cause;
+      } else if (cause instanceof TextParseException) {
+        throw (TextParseException) cause;
+      } else if (cause instanceof UnknownHostException) {
+        throw (UnknownHostException) cause;
+      }
+      throw new DnsException(TypeEnum.OTHER_ERROR, cause);
+    }
+  }
+
   private Entry doResolveEntry(String domain, String hash)
       throws DnsException, TextParseException, UnknownHostException {
     try {
@@ -146,15 +212,7 @@ public class Client {
     }
     String txt = LookUpTxt.joinTXTRecord(txtRecord);
 
-    Entry entry = null;
-    if (txt.startsWith(Entry.branchPrefix)) {
-      entry = BranchEntry.parseEntry(txt);
-    } else if (txt.startsWith(Entry.linkPrefix)) {
-      entry = LinkEntry.parseEntry(txt);
-    } else if (txt.startsWith(Entry.nodesPrefix)) {
-      entry = NodesEntry.parseEntry(txt);
-    }
-
+    Entry entry = parseEntry(txt);
     if (entry == null) {
       throw new DnsException(TypeEnum.NO_ENTRY_FOUND,
           String.format("hash:%s, domain:%s, txt:%s", hash, domain, txt));
@@ -169,6 +227,20 @@ public class Client {
     return entry;
   }
 
+  /**
+   * Parses a branch, link or nodes entry, null if the text is none of them.
+   */
+  public static Entry parseEntry(String txt) throws DnsException {
+    if (txt.startsWith(Entry.branchPrefix)) {
+      return BranchEntry.parseEntry(txt);
+    } else if (txt.startsWith(Entry.linkPrefix)) {
+      return LinkEntry.parseEntry(txt);
+    } else if (txt.startsWith(Entry.nodesPrefix)) {
+      return NodesEntry.parseEntry(txt);
+    }
+    return null;
+  }
+
   public RandomIterator newIterator() {
     RandomIterator randomIterator = new RandomIterator(this);
     for (String urlScheme : Parameter.p2pConfig.getTreeUrls()) {
@@ -185,5 +257,6 @@ public class Client {
     if (syncer != null) {
       syncer.shutdown();
     }
+    resolver.shutdownNow();
   }
 }
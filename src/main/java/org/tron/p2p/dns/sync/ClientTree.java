@@ -3,6 +3,7 @@ package org.tron.p2p.dns.sync;
 
 import java.net.UnknownHostException;
 import java.security.SignatureException;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -63,9 +64,24 @@ public class ClientTree {
   public boolean[] syncAll(Map<String, Entry> entries)
       throws DnsException, UnknownHostException,
       SignatureException, TextParseException {
+    return syncAll(entries, Collections.emptyMap());
+  }
+
+  /**
+   * Syncs both subtrees from the current roots into entries. Entries already in known are reused
+   * without a lookup, so a root change only costs lookups for the entries that changed, and
+   * entries that are no longer reachable are left out.
+   */
+  public boolean[] syncAll(Map<String, Entry> entries, Map<String, Entry> known)
+      throws DnsException, UnknownHostException,
+      SignatureException, TextParseException {
     boolean[] isRootUpdate = updateRoot();
-    linkSync.resolveAll(entries);
-    enrSync.resolveAll(entries);
+    linkSync = new SubtreeSync(client, linkEntry, root.getLRoot(), true);
+    linkSync.resolveAll(entries, known);
+    enrSync = new SubtreeSync(client, linkEntry, root.getERoot(), false);
+    enrSync.resolveAll(entries, known);
+    log.info("Sync tree {}, {} entries, {} reused", linkEntry.getDomain(), entries.size(),
+        linkSync.reused + enrSync.reused);
     return isRootUpdate;
   }
 
@@ -1,35 +1,48 @@
 package org.tron.p2p.dns.sync;
 
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
-
+/**
+ * Link graph of all trees. Every link is kept as a forward edge (parent to child) and a back edge
+ * (child to parent); the back edges of a tree are its reference count, a tree without references
+ * is dropped together with the links it holds. Adding and resetting links only touches the edges
+ * involved, and the trees that came or went since the last rebuild are recorded so that callers
+ * do not have to scan the whole graph.
+ */
 @Slf4j(topic = "net")
 public class LinkCache {
 
   @Getter
   Map<String, Set<String>> backrefs;
+  // parent to children, the reverse of backrefs
+  @Getter
+  private final Map<String, Set<String>> links;
   @Getter
   @Setter
-  private boolean changed; //if data in backrefs changes, we need to rebuild trees
+  private volatile boolean changed; //if data in backrefs changes, we need to rebuild trees
+  // trees that got their first reference or lost their last one since the last drainChanges
+  private final Set<String> added = new HashSet<>();
+  private final Set<String> removed = new HashSet<>();
 
   public LinkCache() {
     backrefs = new HashMap<>();
+    links = new HashMap<>();
     changed = false;
   }
 
   // check if the urlScheme occurs in other trees
-  public boolean isContainInOtherLink(String urlScheme) {
-    return backrefs.containsKey(urlScheme) && !backrefs.get(urlScheme).isEmpty();
+  public synchronized boolean isContainInOtherLink(String urlScheme) {
+    Set<String> refs = backrefs.get(urlScheme);
+    return refs != null && !refs.isEmpty();
   }
 
   /**
@@ -38,13 +51,19 @@ public class LinkCache {
    * @param parent the url tree that contains url tree `children`
    * @param children url tree
    */
-  public void addLink(String parent, String children) {
-    Set<String> refs = backrefs.getOrDefault(children, new HashSet<>());
-    if (!refs.contains(parent)) {
+  public synchronized void addLink(String parent, String children) {
+    Set<String> refs = backrefs.get(children);
+    if (refs == null) {
+      refs = new HashSet<>();
+      backrefs.put(children, refs);
+      if (!removed.remove(children)) {
+        added.add(children);
+      }
+    }
+    if (refs.add(parent)) {
       changed = true;
     }
-    refs.add(parent);
-    backrefs.put(children, refs);
+    links.computeIfAbsent(parent, k -> new HashSet<>()).add(children);
   }
 
   /**
@@ -53,30 +72,53 @@ public class LinkCache {
    * @param from tree's urlScheme
    * @param keep links contained in this tree
    */
-  public void resetLinks(String from, final Set<String> keep) {
-    List<String> stk = new ArrayList<>();
-    stk.add(from);
+  public synchronized void resetLinks(String from, final Set<String> keep) {
+    Deque<String> stk = new ArrayDeque<>();
+    stk.push(from);
 
     while (!stk.isEmpty()) {
-      int size = stk.size();
-      String item = stk.get(size - 1);
-      stk = stk.subList(0, size - 1);
-
-      Iterator<Entry<String, Set<String>>> it = backrefs.entrySet().iterator();
+      String item = stk.pop();
+      Set<String> children = links.get(item);
+      if (children == null) {
+        continue;
+      }
+      Iterator<String> it = children.iterator();
       while (it.hasNext()) {
-        Entry<String, Set<String>> entry = it.next();
-        String r = entry.getKey();
-        Set<String> refs = entry.getValue();
-        if ((keep != null && keep.contains(r)) || !refs.contains(item)) {
+        String r = it.next();
+        if (keep != null && keep.contains(r)) {
           continue;
         }
         this.changed = true;
+        it.remove();
+        Set<String> refs = backrefs.get(r);
+        if (refs == null) {
+          continue;
+        }
         refs.remove(item);
         if (refs.isEmpty()) {
-          it.remove();
-          stk.add(r);
+          // no tree refers to r any more, drop the links it holds too
+          backrefs.remove(r);
+          if (!added.remove(r)) {
+            removed.add(r);
+          }
+          stk.push(r);
         }
       }
+      if (children.isEmpty()) {
+        links.remove(item);
+      }
     }
   }
+
+  /**
+   * Moves the trees added and removed since the last call into the given sets and clears the
+   * changed flag.
+   */
+  public synchronized void drainChanges(Set<String> addedTo, Set<String> removedTo) {
+    addedTo.addAll(added);
+    removedTo.addAll(removed);
+    added.clear();
+    removed.clear();
+    changed = false;
+  }
 }
@@ -1,32 +1,64 @@
 package org.tron.p2p.dns.sync;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.tron.p2p.dns.DnsNode;
 import org.tron.p2p.dns.tree.LinkEntry;
 import org.tron.p2p.exception.DnsException;
+import org.tron.p2p.stats.DnsRandomStats;
 
-
+/**
+ * Random nodes of all linked trees. Background workers sync random tree entries and keep a bounded
+ * buffer of found nodes filled, so callers take nodes without waiting for dns lookups. The workers
+ * start on the first request.
+ */
 @Slf4j(topic = "net")
 public class RandomIterator implements Iterator<DnsNode> {
 
+  static final int BUFFER_SIZE = 64;
+  private static final int WORKERS = 2;
+  // how long next() waits for a node before giving up
+  private static final long NEXT_TIMEOUT = 60_000;
+  private static final long FAILURE_BACKOFF = 1_000;
+
   private final Client client;
-  private Map<String, ClientTree> clientTrees;
+  private volatile Map<String, ClientTree> clientTrees;
+  // snapshot of the trees to pick from, rebuilt when the links change
+  private volatile List<ClientTree> treeList = Collections.emptyList();
   @Getter
   private DnsNode cur;
   private final LinkCache linkCache;
   private final Random random;
 
+  private final BlockingQueue<DnsNode> buffer = new LinkedBlockingQueue<>(BUFFER_SIZE);
+  private final Queue<CompletableFuture<DnsNode>> waiters = new ConcurrentLinkedQueue<>();
+  private ExecutorService workers;
+
+  private final AtomicLong prefetched = new AtomicLong();
+  private final AtomicLong served = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong syncFailures = new AtomicLong();
+
   public RandomIterator(Client client) {
     this.client = client;
     clientTrees = new ConcurrentHashMap<>();
@@ -34,9 +66,129 @@ public class RandomIterator implements Iterator<DnsNode> {
     random = new Random();
   }
 
-  //syncs random tree entries until it finds a node.
+  /**
+   * Waits for the next random node, null if none was found in time or the iterator is closed.
+   */
   @Override
   public DnsNode next() {
+    startWorkers();
+    try {
+      DnsNode node = buffer.poll(NEXT_TIMEOUT, TimeUnit.MILLISECONDS);
+      if (node != null) {
+        served.incrementAndGet();
+      }
+      return node;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    this.cur = next();
+    return this.cur != null;
+  }
+
+  /**
+   * A prefetched random node, null if the buffer is empty right now.
+   */
+  public DnsNode poll() {
+    startWorkers();
+    DnsNode node = buffer.poll();
+    if (node == null) {
+      misses.incrementAndGet();
+    } else {
+      served.incrementAndGet();
+    }
+    return node;
+  }
+
+  /**
+   * Completes with the next random node, or with null once the iterator is closed.
+   */
+  public CompletableFuture<DnsNode> nextAsync() {
+    if (clientTrees == null) {
+      return CompletableFuture.completedFuture(null);
+    }
+    DnsNode node = poll();
+    if (node != null) {
+      return CompletableFuture.completedFuture(node);
+    }
+    CompletableFuture<DnsNode> future = new CompletableFuture<>();
+    waiters.add(future);
+    // a node may have been buffered before the waiter was added
+    node = buffer.poll();
+    if (node != null && !future.complete(node)) {
+      // a worker served the waiter meanwhile, put the node back
+      buffer.offer(node);
+    }
+    if (clientTrees == null) {
+      future.complete(null);
+    }
+    return future;
+  }
+
+  public void addTree(String url) throws DnsException {
+    LinkEntry linkEntry = LinkEntry.parseEntry(url);
+    linkCache.addLink("", linkEntry.getRepresent());
+  }
+
+  public DnsRandomStats getStats() {
+    DnsRandomStats stats = new DnsRandomStats();
+    stats.setTrees(treeList.size());
+    stats.setBufferSize(buffer.size());
+    stats.setBufferCapacity(BUFFER_SIZE);
+    stats.setPrefetched(prefetched.get());
+    stats.setServed(served.get());
+    stats.setMisses(misses.get());
+    stats.setSyncFailures(syncFailures.get());
+    return stats;
+  }
+
+  private synchronized void startWorkers() {
+    if (workers != null || clientTrees == null) {
+      return;
+    }
+    workers = Executors.newFixedThreadPool(WORKERS,
+        new BasicThreadFactory.Builder().namingPattern("dnsRandom-%d").daemon(true).build());
+    for (int i = 0; i < WORKERS; i++) {
+      workers.execute(this::fill);
+    }
+  }
+
+  private void fill() {
+    while (!Thread.currentThread().isInterrupted() && clientTrees != null) {
+      try {
+        DnsNode node = syncNode();
+        if (node == null) {
+          Thread.sleep(FAILURE_BACKOFF);
+        } else if (!buffer.contains(node)) {
+          prefetched.incrementAndGet();
+          deliver(node);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (Exception e) {
+        log.warn("Prefetch dns random node failed, {}", e.getMessage());
+      }
+    }
+  }
+
+  // hands the node to a waiting caller, or buffers it, waiting while the buffer is full
+  private void deliver(DnsNode node) throws InterruptedException {
+    CompletableFuture<DnsNode> waiter;
+    while ((waiter = waiters.poll()) != null) {
+      if (waiter.complete(node)) {
+        served.incrementAndGet();
+        return;
+      }
+    }
+    buffer.put(node);
+  }
+
+  //syncs random tree entries until it finds a node.
+  private DnsNode syncNode() {
     int i = 0;
     while (i < Client.randomRetryTimes) {
       i += 1;
@@ -45,12 +197,13 @@ public class RandomIterator implements Iterator<DnsNode> {
         log.error("clientTree is null");
         return null;
       }
-      log.info("Choose clientTree:{} from {} ClientTree", clientTree.getLinkEntry().getRepresent(),
-          clientTrees.size());
+      log.debug("Choose clientTree:{} from {} ClientTree",
+          clientTree.getLinkEntry().getRepresent(), treeList.size());
       DnsNode dnsNode;
       try {
         dnsNode = clientTree.syncRandom();
       } catch (Exception e) {
+        syncFailures.incrementAndGet();
         log.warn("Error in DNS random node sync, tree:{}, cause:[{}]",
             clientTree.getLinkEntry().getDomain(), e.getMessage());
         continue;
@@ -62,17 +215,6 @@ public class RandomIterator implements Iterator<DnsNode> {
     return null;
   }
 
-  @Override
-  public boolean hasNext() {
-    this.cur = next();
-    return this.cur != null;
-  }
-
-  public void addTree(String url) throws DnsException {
-    LinkEntry linkEntry = LinkEntry.parseEntry(url);
-    linkCache.addLink("", linkEntry.getRepresent());
-  }
-
   //the first random
   private ClientTree pickTree() {
     if (clientTrees == null) {
@@ -81,46 +223,55 @@ public class RandomIterator implements Iterator<DnsNode> {
     }
     if (linkCache.isChanged()) {
       rebuildTrees();
-      linkCache.setChanged(false);
     }
-
-    int size = clientTrees.size();
-    List<ClientTree> allTrees = new ArrayList<>(clientTrees.values());
-
-    return allTrees.get(random.nextInt(size));
+    List<ClientTree> trees = treeList;
+    return trees.isEmpty() ? null : trees.get(random.nextInt(trees.size()));
   }
 
-  // rebuilds the 'trees' map.
-  // if urlScheme is not contain in any other link, wo delete it from clientTrees
-  // then create one ClientTree using this urlScheme， add it to clientTrees
-  private void rebuildTrees() {
-    log.info("rebuildTrees...");
-    Iterator<Entry<String, ClientTree>> it = clientTrees.entrySet().iterator();
-    while (it.hasNext()) {
-      Entry<String, ClientTree> entry = it.next();
-      String urlScheme = entry.getKey();
-      if (!linkCache.isContainInOtherLink(urlScheme)) {
+  // updates the 'trees' map with the trees added to and removed from the link cache since the
+  // last rebuild; a tree is removed once it is not contained in any other link
+  private synchronized void rebuildTrees() {
+    Map<String, ClientTree> trees = clientTrees;
+    if (trees == null || !linkCache.isChanged()) {
+      return;
+    }
+    Set<String> added = new HashSet<>();
+    Set<String> removed = new HashSet<>();
+    linkCache.drainChanges(added, removed);
+    if (added.isEmpty() && removed.isEmpty()) {
+      return;
+    }
+    log.info("rebuildTrees, add {}, remove {}", added.size(), removed.size());
+    for (String urlScheme : removed) {
+      if (trees.remove(urlScheme) != null) {
         log.info("remove tree from trees:{}", urlScheme);
-        it.remove();
       }
     }
-
-    for (Entry<String, Set<String>> entry : linkCache.backrefs.entrySet()) {
-      String urlScheme = entry.getKey();
-      if (!clientTrees.containsKey(urlScheme)) {
+    for (String urlScheme : added) {
+      if (!trees.containsKey(urlScheme)) {
         try {
           LinkEntry linkEntry = LinkEntry.parseEntry(urlScheme);
-          clientTrees.put(urlScheme, new ClientTree(client, linkCache, linkEntry));
+          trees.put(urlScheme, new ClientTree(client, linkCache, linkEntry));
           log.info("add tree to clientTrees:{}", urlScheme);
         } catch (DnsException e) {
           log.error("Parse LinkEntry failed", e);
         }
       }
     }
-    log.info("Exist clientTrees: {}", StringUtils.join(clientTrees.keySet(), ","));
+    treeList = new ArrayList<>(trees.values());
+    log.info("Exist clientTrees: {}", StringUtils.join(trees.keySet(), ","));
   }
 
   public void close() {
     clientTrees = null;
+    synchronized (this) {
+      if (workers != null) {
+        workers.shutdownNow();
+      }
+    }
+    CompletableFuture<DnsNode> waiter;
+    while ((waiter = waiters.poll()) != null) {
+      waiter.complete(null);
+    }
   }
 }
@@ -3,8 +3,11 @@ package org.tron.p2p.dns.sync;
 
 import java.net.UnknownHostException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import lombok.extern.slf4j.Slf4j;
 import org.tron.p2p.dns.tree.BranchEntry;
 import org.tron.p2p.dns.tree.Entry;
@@ -24,6 +27,8 @@ public class SubtreeSync {
 
   public boolean link;
   public int leaves;
+  // entries taken from a previous sync instead of being looked up
+  public int reused;
 
   public LinkedList<String> missing;
 
@@ -43,19 +48,60 @@ public class SubtreeSync {
 
   public void resolveAll(Map<String, Entry> dest)
       throws DnsException, UnknownHostException, TextParseException {
+    resolveAll(dest, Collections.emptyMap());
+  }
+
+  /**
+   * Resolves the whole subtree breadth first. Lookups of the queued hashes run concurrently on
+   * the client's resolver pool, the children of a branch are queued as soon as it resolves, and
+   * entries are checked and put into dest in breadth first order.
+   *
+   * @param known entries held from an earlier sync, entries are addressed by the hash of their
+   * content so a known hash is taken from here without a lookup
+   */
+  public void resolveAll(Map<String, Entry> dest, Map<String, Entry> known)
+      throws DnsException, UnknownHostException, TextParseException {
+    Map<String, CompletableFuture<Entry>> pending = new HashMap<>();
+    missing.forEach(hash -> request(pending, hash, known));
     while (!done()) {
       String hash = missing.peek();
-      Entry entry = resolveNext(hash);
+      CompletableFuture<Entry> future = pending.remove(hash);
+      if (future == null) {
+        // queued more than once, the first lookup left it in the cache
+        future = client.resolveEntryAsync(linkEntry.getDomain(), hash);
+      }
+      Entry entry = check(Client.await(future));
       if (entry != null) {
         dest.put(hash, entry);
       }
       missing.poll();
+      if (entry instanceof BranchEntry) {
+        for (String child : ((BranchEntry) entry).getChildren()) {
+          request(pending, child, known);
+        }
+      }
     }
   }
 
+  private void request(Map<String, CompletableFuture<Entry>> pending, String hash,
+      Map<String, Entry> known) {
+    pending.computeIfAbsent(hash, h -> {
+      Entry entry = known.get(h);
+      if (entry != null) {
+        reused++;
+        return CompletableFuture.completedFuture(entry);
+      }
+      return client.resolveEntryAsync(linkEntry.getDomain(), h);
+    });
+  }
+
   public Entry resolveNext(String hash)
       throws DnsException, TextParseException, UnknownHostException {
-    Entry entry = client.resolveEntry(linkEntry.getDomain(), hash);
+    return check(client.resolveEntry(linkEntry.getDomain(), hash));
+  }
+
+  // counts leaves and queues the children of branches
+  private Entry check(Entry entry) throws DnsException {
     if (entry instanceof NodesEntry) {
       if (link) {
         throw new DnsException(TypeEnum.NODES_IN_LINK_TREE, "");
@@ -0,0 +1,145 @@
+package org.tron.p2p.dns.sync;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.tron.p2p.base.Parameter;
+import org.tron.p2p.dns.tree.Algorithm;
+import org.tron.p2p.dns.tree.BranchEntry;
+import org.tron.p2p.dns.tree.Entry;
+import org.tron.p2p.dns.tree.LinkEntry;
+import org.tron.p2p.dns.tree.RootEntry;
+import org.tron.p2p.dns.tree.Tree;
+import org.tron.p2p.protos.Discover.StoredTrees;
+import org.tron.p2p.protos.Discover.StoredTrees.StoredTree;
+
+/**
+ * Keeps the synced trees on disk, so that dns nodes are available right after a restart. Only the
+ * texts of the signed root and of the entries are stored. On load the root signature is checked
+ * against the tree url again, entries are keyed by the hash of their content and only the ones
+ * reachable from the root are kept, so a damaged or altered file can not inject nodes.
+ */
+@Slf4j(topic = "net")
+public class TreeStore {
+
+  private static final String FILE_NAME = "dns.db";
+
+  /**
+   * The stored trees of the given urls, empty if no data directory is configured.
+   */
+  public static Map<String, Tree> load(List<String> urls) {
+    Map<String, Tree> trees = new HashMap<>();
+    Path path = path();
+    if (path == null) {
+      return trees;
+    }
+    for (StoredTree stored : read(path).getTreesList()) {
+      if (!urls.contains(stored.getUrl())) {
+        continue;
+      }
+      try {
+        Tree tree = restore(stored);
+        trees.put(stored.getUrl(), tree);
+        log.info("Load tree {} from {}, seq {}, {} entries", stored.getUrl(), path,
+            tree.getSeq(), tree.getEntries().size());
+      } catch (Exception e) {
+        log.warn("Drop stored tree {}, {}", stored.getUrl(), e.getMessage());
+      }
+    }
+    return trees;
+  }
+
+  public static void save(Map<String, Tree> trees) {
+    Path path = path();
+    if (path == null) {
+      return;
+    }
+    StoredTrees.Builder builder = StoredTrees.newBuilder();
+    trees.forEach((url, tree) -> {
+      if (tree.getRootEntry() != null && !tree.getEntries().isEmpty()) {
+        StoredTree.Builder stored = StoredTree.newBuilder()
+            .setUrl(url)
+            .setRoot(tree.getRootEntry().toFormat());
+        tree.getEntries().values().forEach(entry -> stored.addEntries(entry.toString()));
+        builder.addTrees(stored);
+      }
+    });
+    try {
+      write(path, builder.build());
+    } catch (IOException e) {
+      log.warn("Save trees to {} failed, {}", path, e.getMessage());
+    }
+  }
+
+  private static Path path() {
+    String dataDir = Parameter.p2pConfig.getDataDir();
+    return StringUtils.isEmpty(dataDir) ? null : Paths.get(dataDir, FILE_NAME);
+  }
+
+  private static Tree restore(StoredTree stored) throws Exception {
+    LinkEntry link = LinkEntry.parseEntry(stored.getUrl());
+    RootEntry root = RootEntry.parseEntry(stored.getRoot(), link.getUnCompressHexPublicKey(),
+        link.getDomain());
+
+    Map<String, Entry> all = new HashMap<>();
+    for (String text : stored.getEntriesList()) {
+      Entry entry = Client.parseEntry(text);
+      if (entry != null) {
+        all.put(Algorithm.encode32AndTruncate(entry.toString()), entry);
+      }
+    }
+    Map<String, Entry> entries = new ConcurrentHashMap<>();
+    Deque<String> queue = new ArrayDeque<>(Arrays.asList(root.getERoot(), root.getLRoot()));
+    while (!queue.isEmpty()) {
+      String hash = queue.poll();
+      Entry entry = all.get(hash);
+      if (entry == null || entries.containsKey(hash)) {
+        continue;
+      }
+      entries.put(hash, entry);
+      if (entry instanceof BranchEntry) {
+        queue.addAll(Arrays.asList(((BranchEntry) entry).getChildren()));
+      }
+    }
+
+    Tree tree = new Tree();
+    tree.setRootEntry(root);
+    tree.setEntries(entries);
+    return tree;
+  }
+
+  private static StoredTrees read(Path path) {
+    if (!Files.exists(path)) {
+      return StoredTrees.getDefaultInstance();
+    }
+    try {
+      return StoredTrees.parseFrom(Files.readAllBytes(path));
+    } catch (Exception e) {
+      log.warn("Read trees from {} failed, {}", path, e.getMessage());
+      return StoredTrees.getDefaultInstance();
+    }
+  }
+
+  private static void write(Path path, StoredTrees trees) throws IOException {
+    Path parent = path.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+    Path tmp = Files.createTempFile(parent, FILE_NAME, ".tmp");
+    try {
+      Files.write(tmp, trees.toByteArray());
+      Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+}
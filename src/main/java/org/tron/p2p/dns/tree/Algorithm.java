@@ -1,6 +1,8 @@
 package org.tron.p2p.dns.tree;
 
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.security.SignatureException;
@@ -23,6 +25,21 @@ public class Algorithm {
   private static final int truncateLength = 26;
   public static final String padding = "=";
 
+  private static final X9ECParameters CURVE_PARAMS = CustomNamedCurves.getByName("secp256k1");
+  private static final ECDomainParameters CURVE = new ECDomainParameters(
+      CURVE_PARAMS.getCurve(), CURVE_PARAMS.getG(), CURVE_PARAMS.getN(), CURVE_PARAMS.getH());
+
+  private static final int CACHE_SIZE = 1000;
+
+  // link keys are decompressed on every sync of every linked tree
+  private static final Cache<String, String> decompressedKeys = CacheBuilder.newBuilder()
+      .maximumSize(CACHE_SIZE).build();
+
+  // roots are checked again on every sync, a root text and signature that verified once under a
+  // key is not recovered again
+  private static final Cache<String, Boolean> verifiedSignatures = CacheBuilder.newBuilder()
+      .maximumSize(CACHE_SIZE).build();
+
   /**
    * return compress public key with hex
    */
@@ -35,13 +52,16 @@ public class Algorithm {
   }
 
   public static String decompressPubKey(String hexPubKey) {
-    X9ECParameters CURVE_PARAMS = CustomNamedCurves.getByName("secp256k1");
-    ECDomainParameters CURVE =
-        new ECDomainParameters(
-            CURVE_PARAMS.getCurve(),
-            CURVE_PARAMS.getG(),
-            CURVE_PARAMS.getN(),
-            CURVE_PARAMS.getH());
+    String cached = decompressedKeys.getIfPresent(hexPubKey);
+    if (cached != null) {
+      return cached;
+    }
+    String decompressed = doDecompressPubKey(hexPubKey);
+    decompressedKeys.put(hexPubKey, decompressed);
+    return decompressed;
+  }
+
+  private static String doDecompressPubKey(String hexPubKey) {
     byte[] pubKey = ByteArray.fromHexString(hexPubKey);
     ECPoint ecPoint = CURVE.getCurve().decodePoint(pubKey);
     byte[] encoded = ecPoint.getEncoded(false);
@@ -84,9 +104,17 @@ public class Algorithm {
    */
   public static boolean verifySignature(String publicKey, String msg, byte[] sig)
       throws SignatureException {
+    String key = publicKey + " " + encode64(sig) + " " + msg;
+    if (verifiedSignatures.getIfPresent(key) != null) {
+      return true;
+    }
     BigInteger pubKey = new BigInteger(publicKey, 16);
     BigInteger pubKeyRecovered = recoverPublicKey(msg, sig);
-    return pubKey.equals(pubKeyRecovered);
+    boolean verified = pubKey.equals(pubKeyRecovered);
+    if (verified) {
+      verifiedSignatures.put(key, Boolean.TRUE);
+    }
+    return verified;
   }
 
   //we only use fix width hash
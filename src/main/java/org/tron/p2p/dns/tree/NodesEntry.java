@@ -3,6 +3,7 @@ package org.tron.p2p.dns.tree;
 
 import com.google.protobuf.InvalidProtocolBufferException;
 import java.net.UnknownHostException;
+import java.util.Collections;
 import java.util.List;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -14,12 +15,13 @@ import org.tron.p2p.exception.DnsException.TypeEnum;
 public class NodesEntry implements Entry {
 
   private final String represent;
+  // decoded once, read only
   @Getter
   private final List<DnsNode> nodes;
 
   public NodesEntry(String represent, List<DnsNode> nodes) {
     this.represent = represent;
-    this.nodes = nodes;
+    this.nodes = Collections.unmodifiableList(nodes);
   }
 
   public static NodesEntry parseEntry(String e) throws DnsException {
@@ -1,9 +1,7 @@
 package org.tron.p2p.dns.tree;
 
 
-import com.google.protobuf.InvalidProtocolBufferException;
 import java.math.BigInteger;
-import java.net.UnknownHostException;
 import java.security.SignatureException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -229,19 +227,14 @@ public class Tree {
    * get nodes from entries dynamically. when sync first time, entries change as time
    */
   public List<DnsNode> getDnsNodes() {
-    List<String> nodesEntryList = getNodesEntry();
     List<DnsNode> nodes = new ArrayList<>();
-    for (String nodesEntry : nodesEntryList) {
-      String joinStr = nodesEntry.substring(Entry.nodesPrefix.length());
-      List<DnsNode> subNodes;
-      try {
-        subNodes = DnsNode.decompress(joinStr);
-      } catch (InvalidProtocolBufferException | UnknownHostException e) {
-        log.error("", e);
-        continue;
+    for (Entry entry : entries.values()) {
+      if (entry instanceof NodesEntry) {
+        // decoded once when the entry was parsed
+        nodes.addAll(((NodesEntry) entry).getNodes());
       }
-      nodes.addAll(subNodes);
     }
     return nodes;
   }
+
 }
@@ -16,7 +16,6 @@ import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
-import org.apache.commons.lang3.StringUtils;
 import org.tron.p2p.P2pConfig;
 import org.tron.p2p.P2pService;
 import org.tron.p2p.base.Parameter;
@@ -96,10 +95,6 @@ public class StartApp {
     if (cli.hasOption("v")) {
       Parameter.p2pConfig.setNetworkId(Integer.parseInt(cli.getOptionValue("v")));
     }
-    if (StringUtils.isNotEmpty(Parameter.p2pConfig.getIpv6())) {
-      log.info("Local ipv6: {}", Parameter.p2pConfig.getIpv6());
-    }
-
     app.checkDnsOption(cli);
 
     p2pService.start(Parameter.p2pConfig);
@@ -0,0 +1,16 @@
+package org.tron.p2p.stats;
+
+import lombok.Data;
+
+@Data
+public class DnsRandomStats {
+  private int trees;
+  // prefetch buffer of random dns nodes
+  private int bufferSize;
+  private int bufferCapacity;
+  private long prefetched;
+  private long served;
+  // polls that found the buffer empty
+  private long misses;
+  private long syncFailures;
+}
@@ -0,0 +1,31 @@
+package org.tron.p2p.stats;
+
+import java.util.Map;
+import lombok.Data;
+
+@Data
+public class KadStats {
+  // routing table
+  private int tableSize;
+  private int[] bucketFill;
+  private long tableAdds;
+  private long evictions;
+  private Map<String, Integer> handlerStates;
+
+  // liveness checks
+  private long pingsSent;
+  private long pongsReceived;
+  private long pingTimeouts;
+  private double pingSuccessRate;
+  private long pingRttP50;
+  private long pingRttP99;
+
+  // lookups, latency in millis and hops as the longest chain of nodes that answered
+  private long lookups;
+  private long lookupQueries;
+  private long lookupLatencyMean;
+  private long lookupLatencyP50;
+  private long lookupLatencyP99;
+  private long lookupHopsMean;
+  private long lookupHopsMax;
+}
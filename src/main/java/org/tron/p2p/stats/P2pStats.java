@@ -12,4 +12,9 @@ public class P2pStats {
   private long udpInSize;
   private long udpOutPackets;
   private long udpInPackets;
+  private long udpDroppedByIp;
+  private long udpDroppedByPrefix;
+  private long udpDeniedNeighbours;
+  private KadStats kadStats;
+  private DnsRandomStats dnsRandomStats;
 }
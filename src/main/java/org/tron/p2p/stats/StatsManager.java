@@ -1,5 +1,10 @@
 package org.tron.p2p.stats;
 
+import org.tron.p2p.discover.NodeManager;
+import org.tron.p2p.discover.protocol.kad.KadService;
+import org.tron.p2p.discover.socket.RateLimitFilter;
+import org.tron.p2p.dns.DnsManager;
+
 public class StatsManager {
 
   public P2pStats getP2pStats() {
@@ -12,6 +17,11 @@ public class StatsManager {
     stats.setUdpOutPackets(TrafficStats.udp.getOutPackets().get());
     stats.setUdpInSize(TrafficStats.udp.getInSize().get());
     stats.setUdpOutSize(TrafficStats.udp.getOutSize().get());
+    stats.setUdpDroppedByIp(RateLimitFilter.getDroppedByIp().get());
+    stats.setUdpDroppedByPrefix(RateLimitFilter.getDroppedByPrefix().get());
+    stats.setUdpDeniedNeighbours(KadService.getDeniedNeighbours().get());
+    stats.setKadStats(NodeManager.getKadStats());
+    stats.setDnsRandomStats(DnsManager.getRandomStats());
     return stats;
   }
 }
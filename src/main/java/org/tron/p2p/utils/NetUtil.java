@@ -15,15 +15,19 @@ import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
@@ -35,6 +39,15 @@ import org.tron.p2p.protos.Discover;
 @Slf4j(topic = "net")
 public class NetUtil {
 
+  private static final int LAN_IP_TIMEOUT = 3000;
+  private static final int IP_LOOKUP_TIMEOUT = 5000;
+
+  private static final Map<String, CompletableFuture<String>> addressLookups =
+      new ConcurrentHashMap<>();
+
+  private static final ExecutorService addressLookupExecutor = Executors.newCachedThreadPool(
+      new BasicThreadFactory.Builder().namingPattern("addressLookup-%d").daemon(true).build());
+
   public static final Pattern PATTERN_IPv4 =
       Pattern.compile("^(1\\d{2}|2[0-4]\\d|25[0-5]|[1-9]\\d|[1-9])\\"
           + ".(1\\d{2}|2[0-4]\\d|25[0-5]|[1-9]\\d|\\d)\\"
@@ -79,9 +92,14 @@ public class NetUtil {
   }
 
   public static Node getNode(Discover.Endpoint endpoint) {
-    return new Node(endpoint.getNodeId().toByteArray(),
+    Node node = new Node(endpoint.getNodeId().toByteArray(),
         ByteArray.toStr(endpoint.getAddress().toByteArray()),
         ByteArray.toStr(endpoint.getAddressIpv6().toByteArray()), endpoint.getPort());
+    if (endpoint.hasRecord()) {
+      // checked on first use, decoding never verifies a signature
+      node.offerRecord(endpoint.getRecord());
+    }
+    return node;
   }
 
   public static byte[] getNodeId() {
@@ -96,6 +114,8 @@ public class NetUtil {
     String ip = null;
     try {
       URLConnection urlConnection = new URL(url).openConnection();
+      urlConnection.setConnectTimeout(IP_LOOKUP_TIMEOUT);
+      urlConnection.setReadTimeout(IP_LOOKUP_TIMEOUT);
       in = new BufferedReader(new InputStreamReader(urlConnection.getInputStream()));
       ip = in.readLine();
       if (ip == null || ip.trim().isEmpty()) {
@@ -238,9 +258,36 @@ public class NetUtil {
     return result;
   }
 
+  /**
+   * Looks up the external ipv4 in the background, once per process.
+   */
+  public static CompletableFuture<String> lookupExternalIpV4() {
+    return lookupAsync("ipv4", NetUtil::getExternalIpV4);
+  }
+
+  public static CompletableFuture<String> lookupExternalIpV6() {
+    return lookupAsync("ipv6", NetUtil::getExternalIpV6);
+  }
+
+  public static CompletableFuture<String> lookupLanIP() {
+    return lookupAsync("lan", NetUtil::getLanIP);
+  }
+
+  private static CompletableFuture<String> lookupAsync(String name, Supplier<String> lookup) {
+    return addressLookups.computeIfAbsent(name, k -> CompletableFuture.supplyAsync(() -> {
+      try {
+        return lookup.get();
+      } catch (Exception e) {
+        log.warn("Lookup {} address failed", name, e);
+        return null;
+      }
+    }, addressLookupExecutor));
+  }
+
   public static String getLanIP() {
     String lanIP;
-    try (Socket s = new Socket("www.baidu.com", 80)) {
+    try (Socket s = new Socket()) {
+      s.connect(new InetSocketAddress("www.baidu.com", 80), LAN_IP_TIMEOUT);
       lanIP = s.getLocalAddress().getHostAddress();
     } catch (IOException e) {
       log.warn("Can't get lan IP. Fall back to 127.0.0.1: " + e);
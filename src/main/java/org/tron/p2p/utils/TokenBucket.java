@@ -0,0 +1,57 @@
+package org.tron.p2p.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter. Tokens are refilled continuously at {@code rate} per second up to
+ * {@code burst}, each permit takes one token.
+ */
+public class TokenBucket {
+
+  private final double tokensPerNano;
+  private final double burst;
+  private double tokens;
+  private long lastRefill;
+
+  public TokenBucket(double rate, double burst) {
+    if (rate <= 0 || burst < 1) {
+      throw new IllegalArgumentException("rate: " + rate + ", burst: " + burst);
+    }
+    this.tokensPerNano = rate / TimeUnit.SECONDS.toNanos(1);
+    this.burst = burst;
+    this.tokens = burst;
+    this.lastRefill = System.nanoTime();
+  }
+
+  public boolean tryAcquire() {
+    return tryAcquire(System.nanoTime());
+  }
+
+  /**
+   * Returns the nanoseconds until a permit is available, 0 if one is available now.
+   */
+  public long nanosToWait() {
+    return nanosToWait(System.nanoTime());
+  }
+
+  synchronized boolean tryAcquire(long now) {
+    refill(now);
+    if (tokens < 1) {
+      return false;
+    }
+    tokens -= 1;
+    return true;
+  }
+
+  synchronized long nanosToWait(long now) {
+    refill(now);
+    return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano);
+  }
+
+  private void refill(long now) {
+    if (now > lastRefill) {
+      tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+      lastRefill = now;
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package org.tron.p2p;
+
+import java.util.concurrent.CompletableFuture;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class P2pConfigTest {
+
+  @Test
+  public void testLookupDisabled() {
+    P2pConfig config = new P2pConfig();
+    config.setIpLookupEnable(false);
+    CompletableFuture<Void> lookup = config.lookupAddresses();
+    Assert.assertTrue(lookup.isDone());
+    Assert.assertNull(config.getIp());
+    Assert.assertNull(config.getIpv6());
+    Assert.assertNull(config.getLanIp());
+  }
+
+  @Test
+  public void testConfiguredAddresses() {
+    P2pConfig config = new P2pConfig();
+    config.setIp("1.2.3.4");
+    config.setIpv6(null);
+    config.setLanIp("10.0.0.1");
+    // nothing left to look up, and configured values are kept
+    Assert.assertTrue(config.lookupAddresses().isDone());
+    Assert.assertEquals("1.2.3.4", config.getIp());
+    Assert.assertNull(config.getIpv6());
+    Assert.assertEquals("10.0.0.1", config.getLanIp());
+  }
+
+  @Test
+  public void testUpdateExternalIp() {
+    P2pConfig config = new P2pConfig();
+    config.setIpLookupEnable(false);
+    Assert.assertTrue(config.updateExternalIp("1.2.3.4"));
+    Assert.assertFalse(config.updateExternalIp("1.2.3.4"));
+    Assert.assertEquals("1.2.3.4", config.getIp());
+    Assert.assertTrue(config.updateExternalIp("5.6.7.8"));
+    Assert.assertEquals("5.6.7.8", config.getIp());
+
+    // an explicitly set address is never replaced
+    config.setIpv6("fe80::1");
+    Assert.assertFalse(config.updateExternalIpv6("2001:db8::1"));
+    Assert.assertEquals("fe80::1", config.getIpv6());
+  }
+}
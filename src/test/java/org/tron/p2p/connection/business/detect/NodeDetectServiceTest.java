@@ -0,0 +1,26 @@
+package org.tron.p2p.connection.business.detect;
+
+import java.net.InetAddress;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NodeDetectServiceTest {
+
+  @Test
+  public void testBadNodeExpire() throws Exception {
+    InetAddress expired = InetAddress.getByName("127.0.0.11");
+    InetAddress banned = InetAddress.getByName("127.0.0.12");
+    long now = System.currentTimeMillis();
+    // bans restored from the node store keep their own expire time
+    NodeDetectService.getBadNodesCache().put(expired, now - 1);
+    NodeDetectService.getBadNodesCache().put(banned, now + 60_000);
+    try {
+      Assert.assertFalse(NodeDetectService.isBadNode(expired));
+      Assert.assertTrue(NodeDetectService.isBadNode(banned));
+      Assert.assertFalse(NodeDetectService.isBadNode(InetAddress.getByName("127.0.0.13")));
+    } finally {
+      NodeDetectService.getBadNodesCache().invalidate(expired);
+      NodeDetectService.getBadNodesCache().invalidate(banned);
+    }
+  }
+}
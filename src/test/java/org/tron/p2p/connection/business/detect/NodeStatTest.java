@@ -0,0 +1,77 @@
+package org.tron.p2p.connection.business.detect;
+
+import java.net.InetSocketAddress;
+import java.util.TreeSet;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.tron.p2p.P2pConfig;
+import org.tron.p2p.base.Parameter;
+import org.tron.p2p.discover.Node;
+
+public class NodeStatTest {
+
+  @BeforeClass
+  public static void init() {
+    Parameter.p2pConfig = new P2pConfig();
+  }
+
+  @Test
+  public void testProbeHistory() {
+    NodeStat stat = new NodeStat(new Node(new InetSocketAddress("127.0.0.1", 10001)));
+    Assert.assertFalse(stat.hasSamples());
+    Assert.assertEquals(0, stat.getScore(), 0);
+
+    stat.setTotalCount(2);
+    stat.recordSuccess(100, 10);
+    stat.recordSuccess(300, 20);
+    Assert.assertEquals(200, stat.getAvgRtt());
+    Assert.assertEquals(1.0, stat.getSuccessRatio(), 0);
+    Assert.assertEquals(20, stat.getLatestRemain());
+    Assert.assertEquals(10, stat.getRemainTrend());
+
+    for (int i = 0; i < 10; i++) {
+      stat.recordSuccess(100, i);
+    }
+    Assert.assertEquals(100, stat.getAvgRtt());
+    Assert.assertEquals(7, stat.getRemainTrend());
+  }
+
+  @Test
+  public void testFailures() {
+    NodeStat stat = new NodeStat(new Node(new InetSocketAddress("127.0.0.1", 10001)));
+    stat.setTotalCount(1);
+    stat.recordSuccess(100, 10);
+    double score = stat.getScore();
+
+    // a failed probe was counted when it was sent
+    stat.setTotalCount(2);
+    stat.recordFailure();
+    Assert.assertEquals(0.5, stat.getSuccessRatio(), 0);
+    Assert.assertEquals(score / 2, stat.getScore(), 1e-9);
+
+    stat.setTotalCount(3);
+    stat.recordSuccess(100, 10);
+    Assert.assertEquals(2.0 / 3, stat.getSuccessRatio(), 1e-9);
+  }
+
+  @Test
+  public void testRanking() {
+    NodeStat fast = new NodeStat(new Node(new InetSocketAddress("127.0.0.1", 10001)));
+    NodeStat slow = new NodeStat(new Node(new InetSocketAddress("127.0.0.2", 10001)));
+    NodeStat flaky = new NodeStat(new Node(new InetSocketAddress("127.0.0.3", 10001)));
+    fast.setTotalCount(1);
+    fast.recordSuccess(50, 10);
+    slow.setTotalCount(1);
+    slow.recordSuccess(1500, 10);
+    flaky.setTotalCount(4);
+    flaky.recordSuccess(50, 10);
+
+    TreeSet<NodeStat> ranked = new TreeSet<>(NodeStat.SCORE_COMPARATOR);
+    ranked.add(slow);
+    ranked.add(flaky);
+    ranked.add(fast);
+    Assert.assertSame(fast, ranked.first());
+    Assert.assertSame(slow, ranked.last());
+  }
+}
@@ -0,0 +1,103 @@
+package org.tron.p2p.discover;
+
+import com.google.common.base.Ticker;
+import com.google.common.net.InetAddresses;
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ExternalAddressVoterTest {
+
+  private final AtomicLong nanos = new AtomicLong();
+
+  private final Ticker ticker = new Ticker() {
+    @Override
+    public long read() {
+      return nanos.get();
+    }
+  };
+
+  private final ExternalAddressVoter voter = new ExternalAddressVoter(() -> 0, ticker);
+
+  @Test
+  public void testQuorum() throws Exception {
+    Assert.assertNull(voter.vote(address("1.1.1.1"), "8.8.8.8"));
+    // a second vote from the same /24 replaces the first one
+    Assert.assertNull(voter.vote(address("1.1.1.2"), "8.8.8.8"));
+    Assert.assertNull(voter.vote(address("2.2.2.2"), "8.8.8.8"));
+    Assert.assertNull(voter.vote(address("3.3.3.3"), "8.8.8.8"));
+    Assert.assertNull(voter.vote(address("4.4.4.4"), "8.8.8.8"));
+    Assert.assertEquals("8.8.8.8", voter.vote(address("5.5.5.5"), "8.8.8.8"));
+    Assert.assertNull(voter.getIpv6());
+  }
+
+  @Test
+  public void testQuorumScalesWithPeers() {
+    AtomicInteger peers = new AtomicInteger();
+    ExternalAddressVoter scaled = new ExternalAddressVoter(peers::get, ticker);
+    Assert.assertEquals(ExternalAddressVoter.MIN_QUORUM, scaled.quorum());
+    peers.set(50);
+    Assert.assertEquals(10, scaled.quorum());
+    peers.set(10_000);
+    Assert.assertEquals(ExternalAddressVoter.MAX_QUORUM, scaled.quorum());
+
+    peers.set(50);
+    for (int i = 1; i < 10; i++) {
+      Assert.assertNull(scaled.vote(address(i), "8.8.8.8"));
+    }
+    Assert.assertEquals("8.8.8.8", scaled.vote(address(10), "8.8.8.8"));
+  }
+
+  @Test
+  public void testMajority() throws Exception {
+    for (int i = 1; i <= 5; i++) {
+      voter.vote(address(i), "8.8.8.8");
+    }
+    for (int i = 6; i <= 9; i++) {
+      voter.vote(address(i), "9.9.9.9");
+    }
+    Assert.assertEquals("8.8.8.8", voter.getIp());
+    voter.vote(address(10), "9.9.9.9");
+    Assert.assertNull(voter.getIp());
+    // the peers that saw the old address switch over
+    Assert.assertEquals("9.9.9.9", voter.vote(address(1), "9.9.9.9"));
+  }
+
+  @Test
+  public void testExpire() {
+    for (int i = 1; i < ExternalAddressVoter.MIN_QUORUM; i++) {
+      voter.vote(address(i), "8.8.8.8");
+    }
+    nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(ExternalAddressVoter.VOTE_EXPIRE + 1));
+    Assert.assertNull(voter.vote(address(ExternalAddressVoter.MIN_QUORUM), "8.8.8.8"));
+  }
+
+  @Test
+  public void testIgnored() throws Exception {
+    Assert.assertNull(voter.vote(address("1.1.1.1"), "192.168.1.2"));
+    Assert.assertNull(voter.vote(address("1.1.1.1"), "not an address"));
+    Assert.assertNull(voter.vote(address("127.0.0.1"), "8.8.8.8"));
+    Assert.assertFalse(ExternalAddressVoter.isPublic(address("10.0.0.1")));
+    Assert.assertFalse(ExternalAddressVoter.isPublic(address("fd00::1")));
+    Assert.assertFalse(ExternalAddressVoter.isPublic(address("fe80::1")));
+    Assert.assertTrue(ExternalAddressVoter.isPublic(address("2001:db8::1")));
+
+    for (int i = 1; i <= ExternalAddressVoter.MIN_QUORUM; i++) {
+      voter.vote(address("2001:db8:" + i + "::1"), "2001:db8::1");
+    }
+    Assert.assertEquals("2001:db8:0:0:0:0:0:1", voter.getIpv6());
+    Assert.assertNull(voter.getIp());
+  }
+
+  // a public ipv4 voter in its own /24
+  private static InetAddress address(int i) {
+    return InetAddresses.forString("20." + i + ".0.1");
+  }
+
+  private static InetAddress address(String ip) throws Exception {
+    return InetAddress.getByName(ip);
+  }
+}
@@ -0,0 +1,62 @@
+package org.tron.p2p.discover;
+
+import java.math.BigInteger;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.tron.p2p.utils.ByteArray;
+import org.tron.p2p.utils.NetUtil;
+
+public class NodeIdTest {
+
+  @Test
+  public void testEquals() {
+    byte[] id = NetUtil.getNodeId();
+    NodeId nodeId = new NodeId(id);
+    Assert.assertArrayEquals(id, nodeId.toByteArray());
+    Assert.assertEquals(nodeId, new NodeId(id.clone()));
+    Assert.assertEquals(nodeId.hashCode(), new NodeId(id.clone()).hashCode());
+    Assert.assertEquals(ByteArray.toHexString(id), nodeId.toString());
+
+    byte[] other = id.clone();
+    other[63] ^= 1;
+    Assert.assertNotEquals(nodeId, new NodeId(other));
+
+    // a shorter id is never equal, even with zero padding
+    Assert.assertNotEquals(new NodeId(new byte[3]), new NodeId(new byte[4]));
+  }
+
+  @Test
+  public void testCommonPrefixLength() {
+    NodeId zero = new NodeId(new byte[64]);
+    Assert.assertEquals(512, zero.commonPrefixLength(zero));
+
+    byte[] id = new byte[64];
+    id[2] = (byte) 0x80;
+    Assert.assertEquals(16, zero.commonPrefixLength(new NodeId(id)));
+    id[2] = 0;
+    id[63] = 1;
+    Assert.assertEquals(511, zero.commonPrefixLength(new NodeId(id)));
+
+    // capped at the shorter id
+    Assert.assertEquals(24, zero.commonPrefixLength(new NodeId(new byte[3])));
+  }
+
+  @Test
+  public void testCompareDistance() {
+    Random random = new Random();
+    for (int i = 0; i < 100; i++) {
+      byte[] target = NetUtil.getNodeId();
+      byte[] a = NetUtil.getNodeId();
+      byte[] b = random.nextBoolean() ? a.clone() : NetUtil.getNodeId();
+      int expected = Integer.signum(xor(target, a).compareTo(xor(target, b)));
+      int actual = Integer.signum(
+          new NodeId(target).compareDistance(new NodeId(a), new NodeId(b)));
+      Assert.assertEquals(expected, actual);
+    }
+  }
+
+  private BigInteger xor(byte[] a, byte[] b) {
+    return new BigInteger(1, a).xor(new BigInteger(1, b));
+  }
+}
@@ -0,0 +1,122 @@
+package org.tron.p2p.discover;
+
+import com.google.common.primitives.Longs;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.tron.p2p.P2pConfig;
+import org.tron.p2p.base.Parameter;
+import org.tron.p2p.discover.message.Message;
+import org.tron.p2p.discover.message.kad.KadMessage;
+import org.tron.p2p.discover.message.kad.NeighborsMessage;
+import org.tron.p2p.discover.message.kad.PingMessage;
+import org.tron.p2p.protos.Discover;
+import org.tron.p2p.utils.NetUtil;
+
+public class NodeRecordTest {
+
+  private static final String privateKey =
+      "b71c71a67e1177ad4e901695e1b4b9ee17ae16c6668d313eac2f96dbcda3f291";
+  private static final String otherKey =
+      "8f2a55949038a9610f50fb23b5883af3b4ecb3c3bb792cbcefbd1542c692be63";
+  private final byte[] nodeId = NodeRecord.nodeIdFromKey(privateKey);
+
+  @Before
+  public void init() {
+    Parameter.p2pConfig = new P2pConfig();
+  }
+
+  @Test
+  public void testSignAndParse() {
+    Map<String, byte[]> capabilities = new HashMap<>();
+    capabilities.put(NodeRecord.ROLE, "full".getBytes(StandardCharsets.UTF_8));
+    capabilities.put(NodeRecord.HEIGHT, Longs.toByteArray(100));
+    NodeRecord record = NodeRecord.sign(privateKey, 1, capabilities);
+
+    NodeRecord parsed = NodeRecord.parse(nodeId, record.toProto());
+    Assert.assertNotNull(parsed);
+    Assert.assertEquals(1, parsed.getSeq());
+    Assert.assertEquals(100, parsed.getHeight());
+    Assert.assertTrue(parsed.matches(capabilities));
+
+    Map<String, byte[]> light = new HashMap<>();
+    light.put(NodeRecord.ROLE, "light".getBytes(StandardCharsets.UTF_8));
+    Assert.assertFalse(parsed.matches(light));
+
+    // a record is bound to the node id that signed it
+    Assert.assertNull(NodeRecord.parse(NetUtil.getNodeId(), record.toProto()));
+
+    // a tampered record keeps the known one
+    Discover.NodeRecord tampered = record.toProto().toBuilder().setSeq(5).build();
+    Assert.assertEquals(1, NodeRecord.parse(nodeId, tampered).getSeq());
+
+    // newer records replace older ones, older ones are ignored
+    NodeRecord newer = NodeRecord.sign(privateKey, 2, light);
+    Assert.assertTrue(NodeRecord.parse(nodeId, newer.toProto()).matches(light));
+    Assert.assertEquals(2, NodeRecord.parse(nodeId, record.toProto()).getSeq());
+  }
+
+  @Test
+  public void testLazyVerify() throws Exception {
+    Map<String, byte[]> capabilities = new HashMap<>();
+    capabilities.put(NodeRecord.ROLE, "full".getBytes(StandardCharsets.UTF_8));
+    NodeRecord record = NodeRecord.sign(privateKey, System.currentTimeMillis(), capabilities);
+    Node from = new Node(nodeId, "127.0.0.1", null, 18888);
+    from.updateRecord(record);
+
+    // decoding keeps the record unverified until it is used
+    PingMessage ping = new PingMessage(from, from);
+    Node parsed = ((PingMessage) Message.parse(ping.getSendData())).getFrom();
+    Assert.assertNull(parsed.getVerifiedRecord());
+    Assert.assertEquals(record.getSeq(), parsed.getRecord().getSeq());
+    Assert.assertNotNull(parsed.getVerifiedRecord());
+
+    // unverified records are not passed on
+    Node relay = new Node(nodeId, "127.0.0.2", null, 18888);
+    relay.offerRecord(record.toProto());
+    Assert.assertFalse(KadMessage.getEndpointFromNode(relay).hasRecord());
+
+    // a forged copy is rejected without shadowing the genuine record with the same signature
+    byte[] otherId = NodeRecord.nodeIdFromKey(otherKey);
+    NodeRecord genuine = NodeRecord.sign(otherKey, 7, capabilities);
+    Node forged = new Node(otherId, "127.0.0.3", null, 18888);
+    forged.offerRecord(genuine.toProto().toBuilder()
+        .addCapabilities(Discover.NodeRecord.Capability.newBuilder().setKey(NodeRecord.HEIGHT))
+        .build());
+    Assert.assertNull(forged.getRecord());
+    Node node = new Node(otherId, "127.0.0.3", null, 18888);
+    node.offerRecord(genuine.toProto());
+    Assert.assertEquals(7, node.getRecord().getSeq());
+  }
+
+  @Test
+  public void testTravelInMessages() throws Exception {
+    Map<String, byte[]> capabilities = new HashMap<>();
+    capabilities.put(NodeRecord.CODECS, "snappy".getBytes(StandardCharsets.UTF_8));
+    Node from = new Node(nodeId, "127.0.0.1", null, 18888);
+    from.updateRecord(NodeRecord.sign(privateKey, System.currentTimeMillis(), capabilities));
+
+    PingMessage ping = new PingMessage(from, from);
+    Node parsed = ((PingMessage) Message.parse(ping.getSendData())).getFrom();
+    Assert.assertEquals(from.getRecord().getSeq(), parsed.getRecord().getSeq());
+
+    // neighbours drop records rather than exceed the packet size
+    List<Node> nodes = new ArrayList<>();
+    for (int i = 1; i <= 16; i++) {
+      Node node = new Node(nodeId, "127.0.1." + i, null, 18888);
+      node.updateRecord(from.getRecord());
+      nodes.add(node);
+    }
+    NeighborsMessage msg = new NeighborsMessage(from, nodes, 1);
+    Assert.assertTrue(msg.getSendLength() < 2048);
+    List<Node> received = ((NeighborsMessage) Message.parse(msg.getSendData())).getNodes();
+    Assert.assertEquals(16, received.size());
+    Assert.assertNotNull(received.get(0).getRecord());
+    Assert.assertNull(received.get(15).getRecord());
+  }
+}
@@ -0,0 +1,126 @@
+package org.tron.p2p.discover;
+
+import com.google.protobuf.ByteString;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.tron.p2p.P2pConfig;
+import org.tron.p2p.base.Parameter;
+import org.tron.p2p.discover.message.kad.KadMessage;
+import org.tron.p2p.protos.Discover.StoredNode;
+import org.tron.p2p.protos.Discover.StoredNodes;
+
+public class NodeStoreTest {
+
+  private Path dir;
+
+  @Before
+  public void init() throws IOException {
+    dir = Files.createTempDirectory("nodeStore");
+    Parameter.p2pConfig = new P2pConfig();
+    Parameter.p2pConfig.setDataDir(dir.toString());
+  }
+
+  @After
+  public void clean() throws IOException {
+    File[] files = dir.toFile().listFiles();
+    if (files != null) {
+      for (File file : files) {
+        Files.deleteIfExists(file.toPath());
+      }
+    }
+    Files.deleteIfExists(dir);
+  }
+
+  @Test
+  public void testReadWrite() throws IOException {
+    Path path = dir.resolve("nodes.db");
+    Assert.assertEquals(0, NodeStore.read(path).getNodesCount());
+
+    StoredNodes snapshot = StoredNodes.newBuilder()
+        .setTimestamp(System.currentTimeMillis())
+        .addNodes(buildNode("127.0.0.1", System.currentTimeMillis()))
+        .build();
+    NodeStore.write(path, snapshot);
+    Assert.assertEquals(snapshot, NodeStore.read(path));
+    Assert.assertEquals(1, dir.toFile().listFiles().length);
+
+    Files.write(path, new byte[] {1, 2, 3});
+    Assert.assertEquals(0, NodeStore.read(path).getNodesCount());
+  }
+
+  @Test
+  public void testCompact() throws Exception {
+    long now = System.currentTimeMillis();
+    StoredNodes snapshot = StoredNodes.newBuilder()
+        .addNodes(buildNode("127.0.0.1", now - 48 * 60 * 60 * 1000L))
+        .addNodes(buildNode("127.0.0.2", now - 1000))
+        .addNodes(buildNode("127.0.0.3", now))
+        .addBans(buildBan("127.0.0.4", now - 1))
+        .addBans(buildBan("127.0.0.5", now + 60_000))
+        .build();
+
+    StoredNodes compacted = NodeStore.compact(snapshot, now);
+    Assert.assertEquals(2, compacted.getNodesCount());
+    Assert.assertEquals(now, compacted.getNodes(0).getUpdateTime());
+    Assert.assertEquals(1, compacted.getBansCount());
+    Assert.assertEquals(InetAddress.getByName("127.0.0.5"),
+        NodeStore.getAddress(compacted.getBans(0)));
+  }
+
+  @Test
+  public void testLoad() throws Exception {
+    long now = System.currentTimeMillis();
+    NodeStore.write(dir.resolve("nodes.db"), StoredNodes.newBuilder()
+        .setTimestamp(now)
+        .addNodes(buildNode("127.0.0.1", now))
+        .addBans(buildBan("127.0.0.2", now + 60_000))
+        .build());
+    try {
+      NodeStore.init();
+      Assert.assertEquals(1, NodeStore.getStoredNodes().size());
+      Assert.assertEquals(1, NodeStore.getStoredBans().size());
+    } finally {
+      NodeStore.close();
+    }
+  }
+
+  @Test
+  public void testRestoreAddresses() {
+    long now = System.currentTimeMillis();
+    StoredNodes snapshot = StoredNodes.newBuilder()
+        .setTimestamp(now - 48 * 60 * 60 * 1000L)
+        .setExternalIp("1.2.3.4")
+        .build();
+    Parameter.p2pConfig.setIpLookupEnable(false);
+    NodeStore.restoreAddresses(snapshot, now);
+    Assert.assertNull(Parameter.p2pConfig.getIp());
+
+    NodeStore.restoreAddresses(snapshot.toBuilder().setTimestamp(now).build(), now);
+    Assert.assertEquals("1.2.3.4", Parameter.p2pConfig.getIp());
+    Assert.assertEquals("1.2.3.4", NodeStore.compact(snapshot, now).getExternalIp());
+  }
+
+  private StoredNode buildNode(String ip, long updateTime) {
+    Node node = new Node(new InetSocketAddress(ip, 18888));
+    return StoredNode.newBuilder()
+        .setEndpoint(KadMessage.getEndpointFromNode(node))
+        .setNetworkId(1)
+        .setUpdateTime(updateTime)
+        .build();
+  }
+
+  private StoredNodes.Ban buildBan(String ip, long expireTime) throws IOException {
+    return StoredNodes.Ban.newBuilder()
+        .setAddress(ByteString.copyFrom(InetAddress.getByName(ip).getAddress()))
+        .setExpireTime(expireTime)
+        .build();
+  }
+}
@@ -0,0 +1,78 @@
+package org.tron.p2p.discover.message;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.tron.p2p.P2pConfig;
+import org.tron.p2p.base.Parameter;
+import org.tron.p2p.discover.Node;
+import org.tron.p2p.discover.message.kad.FindNodeMessage;
+import org.tron.p2p.discover.message.kad.NeighborsMessage;
+import org.tron.p2p.discover.message.kad.PingMessage;
+import org.tron.p2p.discover.protocol.kad.table.KademliaOptions;
+import org.tron.p2p.exception.P2pException;
+import org.tron.p2p.utils.NetUtil;
+
+public class MessageTest {
+
+  private final Node from = new Node(NetUtil.getNodeId(), "127.0.0.1", null, 18888);
+
+  @Before
+  public void init() {
+    Parameter.p2pConfig = new P2pConfig();
+  }
+
+  @Test
+  public void testParseDirectBuffer() throws Exception {
+    PingMessage ping = new PingMessage(from, new Node(NetUtil.getNodeId(), "127.0.0.2", null,
+        18888));
+    PingMessage parsed = (PingMessage) Message.parse(toDirectBuffer(ping.getSendData()));
+    Assert.assertEquals(ping.getTimestamp(), parsed.getTimestamp());
+    Assert.assertEquals(from, parsed.getFrom());
+    Assert.assertEquals("127.0.0.2", parsed.getTo().getHostV4());
+    // the body is only encoded again when asked for
+    Assert.assertArrayEquals(ping.getSendData(), parsed.getSendData());
+    Assert.assertEquals(ping.getSendLength(), parsed.getSendLength());
+
+    FindNodeMessage findNode = new FindNodeMessage(from, NetUtil.getNodeId(), 1);
+    FindNodeMessage parsedFind = (FindNodeMessage) Message.parse(findNode.getSendData());
+    Assert.assertArrayEquals(findNode.getTargetId(), parsedFind.getTargetId());
+    Assert.assertEquals(1, parsedFind.getTimestamp());
+  }
+
+  @Test
+  public void testNeighbours() throws Exception {
+    List<Node> nodes = new ArrayList<>();
+    for (int i = 1; i <= KademliaOptions.BUCKET_SIZE; i++) {
+      nodes.add(new Node(NetUtil.getNodeId(), "127.0.1." + i, null, 18888));
+    }
+    NeighborsMessage msg = new NeighborsMessage(from, nodes, 1);
+    NeighborsMessage parsed = (NeighborsMessage) Message.parse(
+        toDirectBuffer(msg.getSendData()));
+    Assert.assertEquals(nodes, parsed.getNodes());
+
+    // every call hands out its own nodes
+    Node node = parsed.getNodes().get(0);
+    node.setId(NetUtil.getNodeId());
+    Assert.assertEquals(nodes.get(0), parsed.getNodes().get(0));
+
+    nodes.add(new Node(NetUtil.getNodeId(), "127.0.2.1", null, 18888));
+    msg = new NeighborsMessage(from, nodes, 1);
+    try {
+      Message.parse(toDirectBuffer(msg.getSendData()));
+      Assert.fail();
+    } catch (P2pException e) {
+      Assert.assertEquals(P2pException.TypeEnum.BAD_MESSAGE, e.getType());
+    }
+  }
+
+  private ByteBuf toDirectBuffer(byte[] data) {
+    ByteBuf buf = Unpooled.directBuffer(data.length);
+    buf.writeBytes(data);
+    return buf;
+  }
+}
@@ -0,0 +1,27 @@
+package org.tron.p2p.discover.protocol.kad;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HistogramTest {
+
+  @Test
+  public void testPercentile() {
+    Histogram histogram = Histogram.exponential(1, 10);
+    Assert.assertEquals(0, histogram.getPercentile(50));
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i);
+    }
+    Assert.assertEquals(100, histogram.getCount());
+    Assert.assertEquals(50, histogram.getMean());
+    Assert.assertEquals(100, histogram.getMax());
+    // 50 falls in the (32, 64] bucket, 99 in (64, 128]
+    Assert.assertEquals(64, histogram.getPercentile(50));
+    Assert.assertEquals(128, histogram.getPercentile(99));
+    Assert.assertEquals(1, histogram.getPercentile(1));
+
+    // values above the last bound report the maximum
+    histogram.record(100_000);
+    Assert.assertEquals(100_000, histogram.getPercentile(100));
+  }
+}
@@ -7,10 +7,18 @@ import org.junit.Test;
 import org.tron.p2p.P2pConfig;
 import org.tron.p2p.base.Parameter;
 import org.tron.p2p.discover.Node;
+import org.tron.p2p.discover.message.MessageType;
 import org.tron.p2p.discover.message.kad.PingMessage;
 import org.tron.p2p.discover.socket.UdpEvent;
+import org.tron.p2p.utils.NetUtil;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class KadServiceTest {
 
@@ -31,7 +39,7 @@ public class KadServiceTest {
 
   @Test
   public void test() {
-    Assert.assertNotNull(kadService.getPongTimer());
+    Assert.assertNotNull(kadService.getTimer());
     Assert.assertNotNull(kadService.getPublicHomeNode());
     Assert.assertEquals(0, kadService.getAllNodes().size());
 
@@ -46,6 +54,98 @@ public class KadServiceTest {
 
   }
 
+  @Test
+  public void testHandlerLimit() {
+    KadService service = new KadService();
+    service.init();
+    try {
+      NodeHandler first = service.getNodeHandler(new Node(new InetSocketAddress("10.1.0.1", 1)));
+      for (int i = 0; i < KadService.MAX_NODES + 500; i++) {
+        service.getNodeHandler(new Node(new InetSocketAddress("10.0." + (i / 250) + "."
+            + (i % 250), 18888)));
+      }
+      Assert.assertTrue(service.getAllNodes().size() <= KadService.MAX_NODES);
+      // the least recently used handler went first
+      Assert.assertNotSame(first,
+          service.getNodeHandler(new Node(new InetSocketAddress("10.1.0.1", 1))));
+    } finally {
+      service.close();
+    }
+  }
+
+  @Test
+  public void testFloodKeepsTableNodes() {
+    KadService service = new KadService();
+    service.init();
+    try {
+      Node tableNode = new Node(new InetSocketAddress("10.2.0.1", 18888));
+      NodeHandler handler = service.getNodeHandler(tableNode);
+      Assert.assertEquals(NodeHandler.State.DISCOVERED, handler.getState());
+      // the handler that was inserted pings, a second lookup returns it without pinging again
+      Assert.assertSame(handler, service.getNodeHandler(tableNode));
+      Assert.assertEquals(1, service.getPendingRequests().size());
+
+      handler.changeState(NodeHandler.State.ALIVE);
+      Assert.assertEquals(NodeHandler.State.ACTIVE, handler.getState());
+      Assert.assertTrue(service.getTable().contains(tableNode));
+
+      // pings from more one-off sources than the handler map holds
+      for (int i = 0; i < KadService.MAX_NODES + 500; i++) {
+        Node source = new Node(NetUtil.getNodeId(), "10.0." + (i / 250) + "." + (i % 250), null,
+            18888, 18888);
+        service.handleEvent(new UdpEvent(new PingMessage(source, service.getPublicHomeNode()),
+            new InetSocketAddress(source.getHostV4(), source.getPort())));
+      }
+      Assert.assertTrue(service.getAllNodes().size() <= KadService.MAX_NODES + 1);
+
+      // the quiet table node survives the flood with its handler
+      Assert.assertTrue(service.getTable().contains(tableNode));
+      Assert.assertEquals(NodeHandler.State.ACTIVE, handler.getState());
+      Assert.assertSame(handler, service.getNodeHandler(tableNode));
+
+      // once it leaves the table its handler can be evicted again
+      service.unpin(handler);
+      for (int i = 0; i < KadService.MAX_NODES + 500; i++) {
+        service.getNodeHandler(new Node(new InetSocketAddress("10.1." + (i / 250) + "."
+            + (i % 250), 18888)));
+      }
+      Assert.assertNotSame(handler, service.getNodeHandler(tableNode));
+    } finally {
+      service.close();
+    }
+  }
+
+  @Test
+  public void testConcurrentEvents() throws Exception {
+    KadService service = new KadService();
+    service.init();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      Node peer = new Node(new InetSocketAddress("10.3.0.1", 18888));
+      InetSocketAddress sender = new InetSocketAddress(peer.getHostV4(), peer.getPort());
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(executor.submit(() -> {
+          start.await();
+          service.handleEvent(new UdpEvent(
+              new PingMessage(peer, service.getPublicHomeNode()), sender));
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      Assert.assertEquals(1, service.getAllNodes().size());
+      NodeHandler handler = service.getNodeHandler(peer);
+      Assert.assertEquals(NodeHandler.State.DISCOVERED, handler.getState());
+      Assert.assertTrue(service.getPendingRequests().isPending(sender, MessageType.KAD_PONG, 0));
+    } finally {
+      executor.shutdownNow();
+      service.close();
+    }
+  }
 
   @AfterClass
   public static void destroy() {
@@ -0,0 +1,153 @@
+package org.tron.p2p.discover.protocol.kad;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.tron.p2p.P2pConfig;
+import org.tron.p2p.base.Parameter;
+import org.tron.p2p.discover.Node;
+import org.tron.p2p.discover.message.MessageType;
+import org.tron.p2p.discover.message.kad.FindNodeMessage;
+import org.tron.p2p.discover.message.kad.NeighborsMessage;
+import org.tron.p2p.discover.protocol.kad.table.KademliaOptions;
+import org.tron.p2p.discover.socket.UdpEvent;
+import org.tron.p2p.stats.KadStats;
+import org.tron.p2p.utils.NetUtil;
+
+public class LookupTest {
+
+  private KadService kadService;
+  private final List<UdpEvent> findNodes = new ArrayList<>();
+
+  @Before
+  public void init() {
+    Parameter.p2pConfig = new P2pConfig();
+    Parameter.p2pConfig.setIp("127.0.0.1");
+    Parameter.p2pConfig.setDiscoverEnable(false);
+    kadService = new KadService();
+    kadService.init();
+    Parameter.p2pConfig.setDiscoverEnable(true);
+    kadService.setMessageSender(event -> {
+      if (event.getMessage() instanceof FindNodeMessage) {
+        findNodes.add(event);
+      }
+    });
+    for (int i = 1; i <= 5; i++) {
+      kadService.getTable().addNode(newNode("127.0.1." + i));
+    }
+  }
+
+  @After
+  public void destroy() {
+    kadService.close();
+    Parameter.p2pConfig.setDiscoverEnable(false);
+  }
+
+  @Test
+  public void testStall() {
+    for (int i = 6; i <= 10; i++) {
+      kadService.getTable().addNode(newNode("127.0.1." + i));
+    }
+    Lookup lookup = new Lookup(kadService, NetUtil.getNodeId());
+    lookup.start();
+    Assert.assertEquals(KademliaOptions.ALPHA, findNodes.size());
+    Assert.assertFalse(lookup.getFuture().isDone());
+
+    // responses that bring nothing new end the lookup long before all nodes are asked
+    for (int i = 0; i < findNodes.size(); i++) {
+      UdpEvent event = findNodes.get(i);
+      long requestId = ((FindNodeMessage) event.getMessage()).getTimestamp();
+      Assert.assertTrue(kadService.getPendingRequests()
+          .isPending(event.getAddress(), MessageType.KAD_NEIGHBORS, requestId));
+      Assert.assertTrue(respond(event, requestId, Collections.emptyList()));
+      Assert.assertFalse(kadService.getPendingRequests()
+          .isPending(event.getAddress(), MessageType.KAD_NEIGHBORS, requestId));
+    }
+    Assert.assertEquals(2 * KademliaOptions.ALPHA - 1, findNodes.size());
+    Assert.assertTrue(lookup.getFuture().isDone());
+
+    KadStats stats = kadService.getKadStats();
+    Assert.assertEquals(1, stats.getLookups());
+    Assert.assertEquals(findNodes.size(), stats.getLookupQueries());
+    Assert.assertEquals(1, stats.getLookupHopsMax());
+    Assert.assertEquals(10, stats.getTableSize());
+  }
+
+  @Test
+  public void testAdvance() {
+    Lookup lookup = new Lookup(kadService, NetUtil.getNodeId());
+    lookup.start();
+    UdpEvent event = findNodes.get(0);
+    long requestId = ((FindNodeMessage) event.getMessage()).getTimestamp();
+
+    // only the node that was asked may answer, and only with the right nonce
+    Assert.assertFalse(respond(new UdpEvent(event.getMessage(),
+        new InetSocketAddress("127.0.2.1", 18888)), requestId, Collections.emptyList()));
+    Assert.assertFalse(respond(event, requestId + 1, Collections.emptyList()));
+
+    List<Node> nodes = new ArrayList<>();
+    for (int i = 1; i <= 4; i++) {
+      nodes.add(newNode("127.0.3." + i));
+    }
+    Assert.assertTrue(respond(event, requestId, nodes));
+    // the freed slot is used right away
+    Assert.assertEquals(KademliaOptions.ALPHA + 1, findNodes.size());
+    Assert.assertFalse(respond(event, requestId, nodes));
+  }
+
+  @Test
+  public void testSamePeer() {
+    // two lookups asking the same peer get their own replies
+    kadService.getTable().dropNode(newNode("127.0.1.1"));
+    Lookup lookup1 = new Lookup(kadService, NetUtil.getNodeId());
+    Lookup lookup2 = new Lookup(kadService, NetUtil.getNodeId());
+    lookup1.start();
+    lookup2.start();
+    Assert.assertEquals(2 * KademliaOptions.ALPHA, findNodes.size());
+    for (int i = 0; i < findNodes.size(); i++) {
+      UdpEvent event = findNodes.get(i);
+      long requestId = ((FindNodeMessage) event.getMessage()).getTimestamp();
+      Assert.assertTrue(respond(event, requestId, Collections.emptyList()));
+    }
+    Assert.assertTrue(lookup1.getFuture().isDone());
+    Assert.assertTrue(lookup2.getFuture().isDone());
+  }
+
+  @Test
+  public void testCancel() {
+    Lookup lookup = new Lookup(kadService, NetUtil.getNodeId());
+    lookup.start();
+    Assert.assertEquals(KademliaOptions.ALPHA, kadService.getPendingRequests().size());
+
+    // the requests in flight are dropped, late replies are not accepted and nothing is resent
+    lookup.cancel();
+    Assert.assertTrue(lookup.getFuture().isDone());
+    Assert.assertEquals(0, kadService.getPendingRequests().size());
+    UdpEvent event = findNodes.get(0);
+    long requestId = ((FindNodeMessage) event.getMessage()).getTimestamp();
+    Assert.assertFalse(respond(event, requestId, Collections.emptyList()));
+    Assert.assertEquals(KademliaOptions.ALPHA, findNodes.size());
+  }
+
+  @Test
+  public void testRequestId() {
+    long id = kadService.nextRequestId();
+    Assert.assertTrue(id >= System.currentTimeMillis() - 1000);
+    Assert.assertTrue(kadService.nextRequestId() > id);
+  }
+
+  private boolean respond(UdpEvent request, long requestId, List<Node> nodes) {
+    NeighborsMessage msg = new NeighborsMessage(newNode(request.getAddress().getHostString()),
+        nodes, requestId);
+    return kadService.getPendingRequests().complete(request.getAddress(), requestId, msg);
+  }
+
+  private Node newNode(String ip) {
+    return new Node(NetUtil.getNodeId(), ip, null, 18888, 18888);
+  }
+}
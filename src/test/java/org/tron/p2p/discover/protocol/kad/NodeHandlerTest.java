@@ -7,6 +7,7 @@ import org.junit.Test;
 import org.tron.p2p.P2pConfig;
 import org.tron.p2p.base.Parameter;
 import org.tron.p2p.discover.Node;
+import org.tron.p2p.discover.message.kad.FindNodeMessage;
 import org.tron.p2p.discover.message.kad.PingMessage;
 import org.tron.p2p.discover.message.kad.PongMessage;
 
@@ -37,6 +38,9 @@ public class NodeHandlerTest {
     currHandler = new NodeHandler(currNode, kadService);
     oldHandler = new NodeHandler(oldNode, kadService);
     replaceHandler = new NodeHandler(replaceNode, kadService);
+    currHandler.changeState(NodeHandler.State.DISCOVERED);
+    oldHandler.changeState(NodeHandler.State.DISCOVERED);
+    replaceHandler.changeState(NodeHandler.State.DISCOVERED);
   }
 
   @Test
@@ -81,6 +85,24 @@ public class NodeHandlerTest {
     Assert.assertTrue(kadService.getTable().contains(replaceNode));
   }
 
+  @Test
+  public void testFindNodeNeedsBond() {
+    Node node = new Node(new InetSocketAddress("127.0.0.4", 22222));
+    NodeHandler handler = new NodeHandler(node, kadService);
+    Assert.assertNull(handler.getState());
+    handler.changeState(NodeHandler.State.DISCOVERED);
+    FindNodeMessage findNode = new FindNodeMessage(node, node.getId());
+    long denied = KadService.getDeniedNeighbours().get();
+    handler.handleFindNode(findNode);
+    Assert.assertFalse(handler.isBonded());
+    Assert.assertEquals(denied + 1, KadService.getDeniedNeighbours().get());
+
+    handler.handlePong(new PongMessage(node));
+    Assert.assertTrue(handler.isBonded());
+    handler.handleFindNode(findNode);
+    Assert.assertEquals(denied + 1, KadService.getDeniedNeighbours().get());
+  }
+
   @AfterClass
   public static void destroy() {
     kadService.close();
@@ -0,0 +1,82 @@
+package org.tron.p2p.discover.protocol.kad;
+
+import io.netty.util.HashedWheelTimer;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.tron.p2p.P2pConfig;
+import org.tron.p2p.base.Parameter;
+import org.tron.p2p.discover.Node;
+import org.tron.p2p.discover.message.MessageType;
+import org.tron.p2p.discover.message.kad.PongMessage;
+
+public class PendingRequestsTest {
+
+  private HashedWheelTimer timer;
+  private PendingRequests pendingRequests;
+  private final InetSocketAddress peer = new InetSocketAddress("127.0.0.2", 18888);
+
+  @Before
+  public void init() {
+    Parameter.p2pConfig = new P2pConfig();
+    timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS);
+    pendingRequests = new PendingRequests(timer);
+  }
+
+  @After
+  public void destroy() {
+    timer.stop();
+  }
+
+  @Test
+  public void testComplete() throws InterruptedException {
+    AtomicInteger responses = new AtomicInteger();
+    AtomicInteger timeouts = new AtomicInteger();
+    pendingRequests.add(peer, MessageType.KAD_PONG, 0, 100,
+        m -> responses.incrementAndGet(), timeouts::incrementAndGet);
+    Assert.assertTrue(pendingRequests.isPending(peer, MessageType.KAD_PONG, 0));
+
+    PongMessage pong = new PongMessage(new Node(peer));
+    Assert.assertFalse(pendingRequests.complete(new InetSocketAddress("127.0.0.3", 18888), 0,
+        pong));
+    Assert.assertTrue(pendingRequests.complete(peer, 0, pong));
+    Assert.assertFalse(pendingRequests.complete(peer, 0, pong));
+
+    // the cancelled deadline never fires
+    Thread.sleep(300);
+    Assert.assertEquals(1, responses.get());
+    Assert.assertEquals(0, timeouts.get());
+    Assert.assertEquals(0, pendingRequests.size());
+  }
+
+  @Test
+  public void testCancel() throws InterruptedException {
+    AtomicInteger calls = new AtomicInteger();
+    pendingRequests.add(peer, MessageType.KAD_NEIGHBORS, 1, 50, m -> calls.incrementAndGet(),
+        calls::incrementAndGet);
+    Assert.assertFalse(pendingRequests.cancel(peer, MessageType.KAD_NEIGHBORS, 2));
+    Assert.assertTrue(pendingRequests.cancel(peer, MessageType.KAD_NEIGHBORS, 1));
+    Assert.assertFalse(pendingRequests.isPending(peer, MessageType.KAD_NEIGHBORS, 1));
+
+    // neither the deadline nor a late response run a callback
+    Thread.sleep(300);
+    Assert.assertEquals(0, calls.get());
+  }
+
+  @Test
+  public void testTimeout() throws InterruptedException {
+    CountDownLatch latch = new CountDownLatch(2);
+    pendingRequests.add(peer, MessageType.KAD_NEIGHBORS, 1, 50, m -> Assert.fail(),
+        latch::countDown);
+    pendingRequests.add(peer, MessageType.KAD_NEIGHBORS, 2, 50, m -> Assert.fail(),
+        latch::countDown);
+    Assert.assertEquals(2, pendingRequests.size());
+    Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+    Assert.assertEquals(0, pendingRequests.size());
+  }
+}
@@ -9,6 +9,10 @@ import org.tron.p2p.utils.NetUtil;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 public class NodeTableTest {
@@ -199,4 +203,78 @@ public class NodeTableTest {
     List<Node> closest = nodeTable.getClosestNodes(homeNode.getId());
     Assert.assertFalse(closest.isEmpty());
   }
+
+  @Test
+  public void concurrentAddDropTest() throws Exception {
+    int threads = 8;
+    List<Node> nodes = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      nodes.add(new Node(NetUtil.getNodeId(), "10.0." + (i / 100) + "." + (i % 100), null,
+          18888, 18888));
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch latch = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      executor.submit(() -> {
+        Random random = new Random();
+        try {
+          for (int i = 0; i < 5000; i++) {
+            Node node = nodes.get(random.nextInt(nodes.size()));
+            if (random.nextBoolean()) {
+              nodeTable.addNode(node);
+            } else {
+              nodeTable.dropNode(node);
+            }
+            nodeTable.getClosestNodes(node.getId());
+          }
+        } finally {
+          latch.countDown();
+        }
+      });
+    }
+    Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+    executor.shutdown();
+
+    Assert.assertEquals(nodeTable.getNodesCount(), nodeTable.getTableNodes().size());
+    for (Node node : nodeTable.getTableNodes()) {
+      nodeTable.dropNode(node);
+    }
+    // no entry may be left in a bucket without being indexed
+    Assert.assertEquals(0, nodeTable.getNodesCount());
+    Assert.assertEquals(0, nodeTable.getBucketsCount());
+  }
+
+  @Test
+  public void getClosestNodes_sameAsFullSortTest() {
+    Random random = new Random();
+    List<Node> nodes = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      // flip the id of the home node from a random bit on, to spread nodes across buckets
+      byte[] id = NetUtil.getNodeId();
+      int prefix = random.nextInt(24);
+      for (int j = 0; j < prefix; j++) {
+        id[j / 8] &= (byte) ~(0x80 >>> (j % 8));
+      }
+      Node node = new Node(id, "10." + (i / 250) + "." + (i % 250) + ".1", null, 18888, 18888);
+      if (nodeTable.addNode(node) == null && nodeTable.contains(node)) {
+        nodes.add(node);
+      }
+    }
+    Assert.assertEquals(nodes.size(), nodeTable.getNodesCount());
+
+    for (int i = 0; i < 100; i++) {
+      byte[] targetId = i % 2 == 0 ? NetUtil.getNodeId() : nodes.get(i % nodes.size()).getId();
+      List<Node> expected = new ArrayList<>(nodes);
+      expected.sort(new DistanceComparator(targetId));
+      expected = expected.subList(0, Math.min(KademliaOptions.BUCKET_SIZE, expected.size()));
+
+      List<Node> closest = nodeTable.getClosestNodes(targetId);
+      Assert.assertEquals(expected.size(), closest.size());
+      for (int j = 0; j < closest.size(); j++) {
+        // nodes at the same distance may come in any order, only distances must match
+        Assert.assertEquals(NodeEntry.distance(targetId, expected.get(j).getId()),
+            NodeEntry.distance(targetId, closest.get(j).getId()));
+      }
+    }
+  }
 }
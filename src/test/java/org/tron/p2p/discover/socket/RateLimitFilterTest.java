@@ -0,0 +1,67 @@
+package org.tron.p2p.discover.socket;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RateLimitFilterTest {
+
+  private final InetSocketAddress recipient = new InetSocketAddress("127.0.0.1", 18888);
+
+  @Test
+  public void testPerIpLimit() {
+    EmbeddedChannel channel = new EmbeddedChannel(new RateLimitFilter());
+    long dropped = RateLimitFilter.getDroppedByIp().get();
+    int passed = send(channel, "10.0.0.1", 100);
+    // a burst is let through, the rest is dropped
+    Assert.assertTrue(passed >= 50 && passed < 100);
+    Assert.assertEquals(100 - passed, RateLimitFilter.getDroppedByIp().get() - dropped);
+
+    // other sources are not affected
+    Assert.assertEquals(10, send(channel, "10.0.1.1", 10));
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  public void testPerPrefixLimit() {
+    EmbeddedChannel channel = new EmbeddedChannel(new RateLimitFilter());
+    long dropped = RateLimitFilter.getDroppedByPrefix().get();
+    int passed = 0;
+    for (int i = 1; i <= 20; i++) {
+      passed += send(channel, "10.0.2." + i, 20);
+    }
+    Assert.assertTrue(passed >= 200 && passed < 400);
+    Assert.assertEquals(400 - passed, RateLimitFilter.getDroppedByPrefix().get() - dropped);
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  public void testPrefix() throws Exception {
+    Assert.assertEquals(RateLimitFilter.prefix(InetAddress.getByName("1.2.3.4")),
+        RateLimitFilter.prefix(InetAddress.getByName("1.2.3.200")));
+    Assert.assertNotEquals(RateLimitFilter.prefix(InetAddress.getByName("1.2.3.4")),
+        RateLimitFilter.prefix(InetAddress.getByName("1.2.4.4")));
+    Assert.assertEquals(RateLimitFilter.prefix(InetAddress.getByName("2001:db8:1::1")),
+        RateLimitFilter.prefix(InetAddress.getByName("2001:db8:1:ff::2")));
+    Assert.assertNotEquals(RateLimitFilter.prefix(InetAddress.getByName("2001:db8:1::1")),
+        RateLimitFilter.prefix(InetAddress.getByName("2001:db8:2::1")));
+  }
+
+  private int send(EmbeddedChannel channel, String ip, int count) {
+    int passed = 0;
+    for (int i = 0; i < count; i++) {
+      channel.writeInbound(new DatagramPacket(Unpooled.wrappedBuffer(new byte[] {1, 2}),
+          recipient, new InetSocketAddress(ip, 18888)));
+      DatagramPacket packet = channel.readInbound();
+      if (packet != null) {
+        passed++;
+        packet.release();
+      }
+    }
+    return passed;
+  }
+}
@@ -35,6 +35,9 @@ public class AlgorithmTest {
     byte[] sig = Algorithm.sigData(msg, privateKey);
     try {
       Assert.assertTrue(Algorithm.verifySignature(publicKey, msg, sig));
+      // the second check is answered from the cache
+      Assert.assertTrue(Algorithm.verifySignature(publicKey, msg, sig));
+      Assert.assertFalse(Algorithm.verifySignature(publicKey, msg + " changed", sig));
     } catch (SignatureException e) {
       Assert.fail();
     }
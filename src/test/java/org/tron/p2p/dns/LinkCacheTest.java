@@ -1,6 +1,10 @@
 package org.tron.p2p.dns;
 
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.Assert;
 import org.junit.Test;
@@ -33,4 +37,39 @@ public class LinkCacheTest {
     Assert.assertTrue(lc.isChanged());
     Assert.assertEquals(0, lc.getBackrefs().size());
   }
+
+  @Test
+  public void testLinkChanges() {
+    LinkCache lc = new LinkCache();
+    lc.addLink("", "1");
+    lc.addLink("1", "2");
+    lc.addLink("1", "3");
+    lc.addLink("2", "3");
+    Assert.assertEquals(new HashSet<>(Arrays.asList("2", "3")), lc.getLinks().get("1"));
+
+    Set<String> added = new HashSet<>();
+    Set<String> removed = new HashSet<>();
+    lc.drainChanges(added, removed);
+    Assert.assertFalse(lc.isChanged());
+    Assert.assertEquals(new HashSet<>(Arrays.asList("1", "2", "3")), added);
+    Assert.assertTrue(removed.isEmpty());
+
+    // "3" is still referred by "2"
+    lc.resetLinks("1", Collections.singleton("2"));
+    Assert.assertTrue(lc.isChanged());
+    Assert.assertTrue(lc.isContainInOtherLink("3"));
+    Assert.assertEquals(Collections.singleton("2"), lc.getBackrefs().get("3"));
+
+    // dropping "2" drops "3" with it
+    lc.resetLinks("1", null);
+    Assert.assertFalse(lc.isContainInOtherLink("2"));
+    Assert.assertFalse(lc.isContainInOtherLink("3"));
+    Assert.assertTrue(lc.isContainInOtherLink("1"));
+    Assert.assertFalse(lc.getLinks().containsKey("2"));
+
+    added.clear();
+    lc.drainChanges(added, removed);
+    Assert.assertTrue(added.isEmpty());
+    Assert.assertEquals(new HashSet<>(Arrays.asList("2", "3")), removed);
+  }
 }
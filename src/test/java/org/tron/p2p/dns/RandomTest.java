@@ -9,6 +9,7 @@ import org.tron.p2p.P2pConfig;
 import org.tron.p2p.base.Parameter;
 import org.tron.p2p.dns.sync.Client;
 import org.tron.p2p.dns.sync.RandomIterator;
+import org.tron.p2p.stats.DnsRandomStats;
 
 public class RandomTest {
 
@@ -33,5 +34,13 @@ public class RandomTest {
       count += 1;
       System.out.println("get Node success:" + dnsNode.format());
     }
+
+    DnsRandomStats stats = randomIterator.getStats();
+    Assert.assertEquals(20, stats.getServed());
+    Assert.assertTrue(stats.getPrefetched() >= 20);
+    Assert.assertTrue(stats.getBufferSize() <= stats.getBufferCapacity());
+
+    randomIterator.close();
+    Assert.assertNull(randomIterator.nextAsync().join());
   }
 }
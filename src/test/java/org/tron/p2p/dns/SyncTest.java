@@ -2,13 +2,22 @@ package org.tron.p2p.dns;
 
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Assert;
 import org.junit.Test;
 import org.tron.p2p.P2pConfig;
 import org.tron.p2p.base.Parameter;
 import org.tron.p2p.dns.sync.Client;
 import org.tron.p2p.dns.sync.ClientTree;
+import org.tron.p2p.dns.sync.SubtreeSync;
+import org.tron.p2p.dns.tree.Entry;
+import org.tron.p2p.dns.tree.LinkEntry;
+import org.tron.p2p.dns.tree.NodesEntry;
 import org.tron.p2p.dns.tree.Tree;
 
 public class SyncTest {
@@ -31,4 +40,114 @@ public class SyncTest {
       Assert.fail();
     }
   }
+
+  @Test
+  public void testIncrementalSync() throws Exception {
+    Parameter.p2pConfig = new P2pConfig();
+    List<DnsNode> nodes = new ArrayList<>();
+    for (int i = 1; i <= 200; i++) {
+      nodes.add(new DnsNode(null, "192.168." + (i / 100) + "." + (i % 100), null, 10000));
+    }
+    Tree oldTree = new Tree();
+    oldTree.makeTree(1, Tree.merge(nodes, 5), new ArrayList<>(), null);
+    // stays the first node once sorted, so only the first leaf changes
+    nodes.set(0, new DnsNode(null, "192.168.0.0", null, 10000));
+    Tree newTree = new Tree();
+    newTree.makeTree(2, Tree.merge(nodes, 5), new ArrayList<>(), null);
+
+    AtomicInteger lookups = new AtomicInteger();
+    Client client = new Client() {
+      @Override
+      public CompletableFuture<Entry> resolveEntryAsync(String domain, String hash) {
+        lookups.incrementAndGet();
+        return CompletableFuture.completedFuture(newTree.getEntries().get(hash));
+      }
+    };
+    LinkEntry linkEntry = LinkEntry.parseEntry(
+        "tree://AKMQMNAJJBL73LXWPXDI4I5ZWWIZ4AWO34DWQ636QOBBXNFXH3LQS@nile.trondisco.net");
+
+    Map<String, Entry> entries = new HashMap<>();
+    new SubtreeSync(client, linkEntry, newTree.getRootEntry().getERoot(), false)
+        .resolveAll(entries, new HashMap<>(oldTree.getEntries()));
+    // the changed leaf, its branch and the root
+    Assert.assertEquals(3, lookups.get());
+    // entries are addressed by their content, equal hashes mean equal leaves
+    Assert.assertEquals(newTree.getNodesMap().keySet(), filterNodes(entries).keySet());
+    client.close();
+  }
+
+  @Test
+  public void testInflightLookup() throws Exception {
+    Parameter.p2pConfig = new P2pConfig();
+    Entry entry = Client.parseEntry(Entry.branchPrefix);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger lookups = new AtomicInteger();
+    Client client = new Client() {
+      @Override
+      public Entry resolveEntry(String domain, String hash) {
+        lookups.incrementAndGet();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return entry;
+      }
+    };
+    try {
+      // two syncs ask for the same hash while its lookup is still running
+      CompletableFuture<Entry> first = client.resolveEntryAsync("example.org", "HASH");
+      CompletableFuture<Entry> second = client.resolveEntryAsync("example.org", "HASH");
+      Assert.assertSame(first, second);
+      release.countDown();
+      Assert.assertSame(entry, Client.await(first));
+      Assert.assertSame(entry, Client.await(second));
+      Assert.assertEquals(1, lookups.get());
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  public void testLookupParallelism() throws Exception {
+    Parameter.p2pConfig = new P2pConfig();
+    Parameter.p2pConfig.setDnsSyncParallelism(3);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    Client client = new Client() {
+      @Override
+      public Entry resolveEntry(String domain, String hash) {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        running.decrementAndGet();
+        return null;
+      }
+    };
+    try {
+      List<CompletableFuture<Entry>> futures = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        futures.add(client.resolveEntryAsync("example.org", "HASH" + i));
+      }
+      for (CompletableFuture<Entry> future : futures) {
+        Client.await(future);
+      }
+      Assert.assertEquals(3, maxRunning.get());
+    } finally {
+      client.close();
+    }
+  }
+
+  private static Map<String, Entry> filterNodes(Map<String, Entry> entries) {
+    Map<String, Entry> nodes = new HashMap<>();
+    entries.forEach((hash, entry) -> {
+      if (entry instanceof NodesEntry) {
+        nodes.put(hash, entry);
+      }
+    });
+    return nodes;
+  }
 }
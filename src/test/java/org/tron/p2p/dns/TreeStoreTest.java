@@ -0,0 +1,69 @@
+package org.tron.p2p.dns;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.tron.p2p.P2pConfig;
+import org.tron.p2p.base.Parameter;
+import org.tron.p2p.dns.sync.TreeStore;
+import org.tron.p2p.dns.tree.LinkEntry;
+import org.tron.p2p.dns.tree.Tree;
+import org.tron.p2p.dns.update.PublishConfig;
+
+public class TreeStoreTest {
+
+  private Path dir;
+
+  @Before
+  public void init() throws IOException {
+    dir = Files.createTempDirectory("treeStore");
+    Parameter.p2pConfig = new P2pConfig();
+    Parameter.p2pConfig.setDataDir(dir.toString());
+  }
+
+  @After
+  public void clean() throws IOException {
+    File[] files = dir.toFile().listFiles();
+    if (files != null) {
+      for (File file : files) {
+        Files.deleteIfExists(file.toPath());
+      }
+    }
+    Files.deleteIfExists(dir);
+  }
+
+  @Test
+  public void testSaveLoad() throws Exception {
+    Tree tree = new Tree();
+    tree.makeTree(3, Tree.merge(new ArrayList<>(Arrays.asList(TreeTest.sampleNode())),
+        new PublishConfig().getMaxMergeSize()), new ArrayList<>(), AlgorithmTest.privateKey);
+    String url = LinkEntry.buildRepresent(tree.getBase32PublicKey(), "nodes.example.org");
+    // signed by another key than the one in the url
+    String otherUrl = "tree://AKA3AM6LPBYEUDMVNU3BSVQJ5AD45Y7YPOHJLEF6W26QOE4VTUDPE@example.org";
+
+    Map<String, Tree> trees = new HashMap<>();
+    trees.put(url, tree);
+    trees.put(otherUrl, tree);
+    TreeStore.save(trees);
+
+    Map<String, Tree> loaded = TreeStore.load(Arrays.asList(url, otherUrl));
+    Assert.assertEquals(Collections.singleton(url), loaded.keySet());
+    Tree restored = loaded.get(url);
+    Assert.assertEquals(3, restored.getSeq());
+    Assert.assertEquals(tree.getEntries().keySet(), restored.getEntries().keySet());
+    Assert.assertEquals(tree.getDnsNodes().size(), restored.getDnsNodes().size());
+
+    // urls no longer configured are not loaded
+    Assert.assertTrue(TreeStore.load(Collections.emptyList()).isEmpty());
+  }
+}
@@ -0,0 +1,90 @@
+package org.tron.p2p.dns.lookup;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import org.tron.p2p.dns.lookup.ResolverPool.Server;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TXTRecord;
+import org.xbill.DNS.Type;
+
+public class ResolverPoolTest {
+
+  // never explores, so the choice is deterministic
+  private final Random noExplore = new Random() {
+    @Override
+    public double nextDouble() {
+      return 0.99;
+    }
+  };
+
+  private final ResolverPool pool = new ResolverPool(Arrays.asList(
+      new InetSocketAddress("127.0.0.1", 53),
+      new InetSocketAddress("127.0.0.2", 53),
+      new InetSocketAddress("127.0.0.3", 53)), noExplore);
+
+  @Test
+  public void testPickFastestHealthy() {
+    List<Server> servers = pool.getServers();
+    servers.get(0).onSuccess(200);
+    servers.get(1).onSuccess(20);
+    servers.get(2).onSuccess(100);
+    Assert.assertSame(servers.get(1), pool.pick(null));
+    Assert.assertSame(servers.get(2), pool.pick(servers.get(1)));
+
+    // the fastest server starts failing
+    for (int i = 0; i < 5; i++) {
+      servers.get(1).onFailure();
+    }
+    Assert.assertSame(servers.get(2), pool.pick(null));
+  }
+
+  @Test
+  public void testHedgeDelay() {
+    Assert.assertEquals(ResolverPool.TIMEOUT / 2, pool.hedgeDelay());
+    for (int i = 1; i <= 100; i++) {
+      pool.recordLatency(i * 2);
+    }
+    Assert.assertEquals(180, pool.hedgeDelay());
+    for (int i = 0; i < 200; i++) {
+      pool.recordLatency(1);
+    }
+    Assert.assertEquals(ResolverPool.MIN_HEDGE_DELAY, pool.hedgeDelay());
+  }
+
+  @Test
+  public void testEmptyAnswer() throws Exception {
+    Name name = Name.fromString("example.org.");
+    Message response = Message.newQuery(Record.newRecord(name, Type.TXT, DClass.IN));
+    Assert.assertFalse(ResolverPool.hasAnswer(response, Type.TXT));
+    response.addRecord(new ARecord(name, DClass.IN, 60, InetAddress.getByName("1.2.3.4")),
+        Section.ANSWER);
+    Assert.assertFalse(ResolverPool.hasAnswer(response, Type.TXT));
+    response.addRecord(new TXTRecord(name, DClass.IN, 60, "tree-branch:"), Section.ANSWER);
+    Assert.assertTrue(ResolverPool.hasAnswer(response, Type.TXT));
+    response.getHeader().setRcode(Rcode.NXDOMAIN);
+    Assert.assertFalse(ResolverPool.hasAnswer(response, Type.TXT));
+  }
+
+  @Test
+  public void testPickSkipsTried() {
+    List<Server> servers = pool.getServers();
+    servers.get(0).onSuccess(10);
+    servers.get(1).onSuccess(20);
+    servers.get(2).onSuccess(30);
+    Set<Server> tried = new HashSet<>(Arrays.asList(servers.get(0), servers.get(1)));
+    Assert.assertSame(servers.get(2), pool.pick(tried));
+  }
+}
@@ -0,0 +1,37 @@
+package org.tron.p2p.utils;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TokenBucketTest {
+
+  @Test
+  public void testBurstAndRefill() {
+    TokenBucket bucket = new TokenBucket(100, 10);
+    long now = System.nanoTime();
+    for (int i = 0; i < 10; i++) {
+      Assert.assertTrue(bucket.tryAcquire(now));
+    }
+    Assert.assertFalse(bucket.tryAcquire(now));
+    Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(10), bucket.nanosToWait(now), 1);
+
+    // 100 per second gives one token every 10 ms
+    now += TimeUnit.MILLISECONDS.toNanos(10);
+    Assert.assertEquals(0, bucket.nanosToWait(now));
+    Assert.assertTrue(bucket.tryAcquire(now));
+    Assert.assertFalse(bucket.tryAcquire(now));
+
+    // an idle bucket never holds more than the burst
+    now += TimeUnit.SECONDS.toNanos(10);
+    for (int i = 0; i < 10; i++) {
+      Assert.assertTrue(bucket.tryAcquire(now));
+    }
+    Assert.assertFalse(bucket.tryAcquire(now));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadRate() {
+    new TokenBucket(0, 10);
+  }
+}